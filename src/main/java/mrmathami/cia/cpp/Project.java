@@ -1,11 +1,13 @@
 package mrmathami.cia.cpp;
 
 import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.SymbolTable;
 import mrmathami.cia.cpp.builder.ProjectVersion;
 import mrmathami.cia.cpp.differ.VersionDifference;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
@@ -13,17 +15,28 @@ import java.io.Serializable;
 import java.util.List;
 
 public final class Project implements Serializable {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nonnull private final String projectName;
 	@Nonnull private final List<ProjectVersion> versionList;
 	@Nonnull private final List<VersionDifference> differenceList;
+	@Nonnull private final SymbolTable symbolTable;
 
 	public Project(@Nonnull String projectName, @Nonnull List<ProjectVersion> versionList,
 			@Nonnull List<VersionDifference> differenceList) {
+		this(projectName, versionList, differenceList, new SymbolTable());
+	}
+
+	/**
+	 * Create a project whose versions were locked against the specified symbol table. The table is saved with the
+	 * project, after the versions, so it costs little more than a reference per entry.
+	 */
+	public Project(@Nonnull String projectName, @Nonnull List<ProjectVersion> versionList,
+			@Nonnull List<VersionDifference> differenceList, @Nonnull SymbolTable symbolTable) {
 		this.projectName = projectName;
 		this.versionList = List.copyOf(versionList);
 		this.differenceList = List.copyOf(differenceList);
+		this.symbolTable = symbolTable;
 	}
 
 	@Nonnull
@@ -31,6 +44,8 @@ public final class Project implements Serializable {
 		final ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
 		try {
 			return (Project) objectInputStream.readObject();
+		} catch (InvalidClassException e) {
+			throw new IOException("Input file was saved in an older, unsupported format!", e);
 		} catch (ClassNotFoundException | ClassCastException e) {
 			throw new IOException("Wrong input file format!", e);
 		}
@@ -56,4 +71,14 @@ public final class Project implements Serializable {
 	public List<VersionDifference> getDifferenceList() {
 		return differenceList;
 	}
+
+	/**
+	 * Get the symbol table of the project. New versions of the project should be locked against it.
+	 *
+	 * @return the symbol table
+	 */
+	@Nonnull
+	public SymbolTable getSymbolTable() {
+		return symbolTable;
+	}
 }
@@ -0,0 +1,155 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable body of an {@link IBodyContainer} node. Equality only use the 128-bit content hash, so the body text can be
+ * compressed or dropped without affecting the comparison.
+ */
+final class Body implements Serializable {
+	private static final long serialVersionUID = -1L;
+
+	@Nullable private final String text;
+	@Nullable private final byte[] compressed;
+	private final int length;
+	private final long hashHigh;
+	private final long hashLow;
+
+	private Body(@Nullable String text, @Nullable byte[] compressed, int length, long hashHigh, long hashLow) {
+		this.text = text;
+		this.compressed = compressed;
+		this.length = length;
+		this.hashHigh = hashHigh;
+		this.hashLow = hashLow;
+	}
+
+	@Nonnull
+	static Body of(@Nonnull String text) {
+		final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		final byte[] digest = createDigest().digest(bytes);
+		return new Body(text, null, bytes.length, toLong(digest, 0), toLong(digest, 8));
+	}
+
+	@Nullable
+	static Body ofNullable(@Nullable String text) {
+		return text != null ? of(text) : null;
+	}
+
+	@Nonnull
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException exception) {
+			// every implementation of the Java platform is required to support MD5
+			throw new AssertionError(exception);
+		}
+	}
+
+	private static long toLong(@Nonnull byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = offset; i < offset + 8; i++) value = value << 8 | bytes[i] & 0xFF;
+		return value;
+	}
+
+	@Nonnull
+	private static byte[] deflate(@Nonnull String text) {
+		final Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+			deflater.finish();
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				outputStream.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return outputStream.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Nonnull
+	private static String inflate(@Nonnull byte[] compressed, int length) {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			final byte[] bytes = new byte[length];
+			int offset = 0;
+			while (offset < length && !inflater.finished()) {
+				offset += inflater.inflate(bytes, offset, length - offset);
+			}
+			return new String(bytes, 0, offset, StandardCharsets.UTF_8);
+		} catch (DataFormatException exception) {
+			throw new IllegalStateException("Corrupted compressed body!", exception);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Get the body text. Return null if the text is dropped.
+	 *
+	 * @return the body text
+	 */
+	@Nullable
+	String getText() {
+		if (text != null) return text;
+		return compressed != null ? inflate(compressed, length) : null;
+	}
+
+	/**
+	 * Convert this body to the requested storage.
+	 *
+	 * @param storage the body storage
+	 * @return the converted body
+	 */
+	@Nonnull
+	Body toStorage(@Nonnull BodyStorage storage) {
+		switch (storage) {
+			case COMPRESSED:
+				if (text == null) return compressed != null ? this : new Body(null, null, length, hashHigh, hashLow);
+				return new Body(null, deflate(text), length, hashHigh, hashLow);
+			case HASH:
+				return text == null && compressed == null ? this : new Body(null, null, length, hashHigh, hashLow);
+			default:
+				final String bodyText = getText();
+				return text != null || bodyText == null ? this
+						: new Body(bodyText, null, length, hashHigh, hashLow);
+		}
+	}
+
+	long getHashHigh() {
+		return hashHigh;
+	}
+
+	long getHashLow() {
+		return hashLow;
+	}
+
+	long fingerprint() {
+		return Fingerprint.combine(hashHigh, hashLow ^ length);
+	}
+
+	@Override
+	public boolean equals(@Nullable Object object) {
+		if (this == object) return true;
+		if (!(object instanceof Body)) return false;
+		final Body body = (Body) object;
+		return hashLow == body.hashLow && hashHigh == body.hashHigh && length == body.length;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hashLow ^ hashLow >>> 32);
+	}
+}
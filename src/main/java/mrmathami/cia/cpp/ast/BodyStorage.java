@@ -0,0 +1,20 @@
+package mrmathami.cia.cpp.ast;
+
+/**
+ * How the bodies of {@link IBodyContainer} nodes are kept after the tree is locked. Whatever the storage is, two bodies
+ * are compared using their 128-bit content hash.
+ */
+public enum BodyStorage {
+	/**
+	 * Keep the full body text.
+	 */
+	STRING,
+	/**
+	 * Keep the content hash and a compressed copy of the body. The body text is inflated every time it is requested.
+	 */
+	COMPRESSED,
+	/**
+	 * Keep the content hash only. The body text is dropped, and {@link IBodyContainer#getBody()} always return null.
+	 */
+	HASH
+}
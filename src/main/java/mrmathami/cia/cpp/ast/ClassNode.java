@@ -11,11 +11,10 @@ import java.io.ObjectOutput;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public final class ClassNode extends CppNode implements IClassContainer, IEnumContainer, IFunctionContainer, IVariableContainer, ITypedefContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nonnull private transient Set<CppNode> bases = new HashSet<>();
 
@@ -104,9 +103,9 @@ public final class ClassNode extends CppNode implements IClassContainer, IEnumCo
 	}
 
 	@Override
-	protected int similarHashcode(@Nonnull Matcher matcher) {
-		int result = super.similarHashcode(matcher);
-		result = 31 * result + bases.size();
+	protected long similarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.similarFingerprint(matcher);
+		result = Fingerprint.combine(result, bases.size());
 		return result;
 	}
 
@@ -117,9 +116,9 @@ public final class ClassNode extends CppNode implements IClassContainer, IEnumCo
 	}
 
 	@Override
-	protected int identicalHashcode(@Nonnull Matcher matcher) {
-		int result = super.identicalHashcode(matcher);
-		result = 31 * result + bases.size();
+	protected long identicalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.identicalFingerprint(matcher);
+		result = Fingerprint.combine(result, bases.size());
 		return result;
 	}
 	//</editor-fold>
@@ -127,8 +126,8 @@ public final class ClassNode extends CppNode implements IClassContainer, IEnumCo
 	//region TreeNode
 
 	@Override
-	void internalLock(@Nonnull Map<String, String> stringPool, @Nonnull Map<DependencyMap, DependencyMap> countsPool) {
-		super.internalLock(stringPool, countsPool);
+	void internalLock(@Nonnull SymbolTable symbolTable, @Nonnull BodyStorage bodyStorage) {
+		super.internalLock(symbolTable, bodyStorage);
 		this.bases = Set.copyOf(bases);
 	}
 
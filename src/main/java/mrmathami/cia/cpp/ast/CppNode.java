@@ -3,7 +3,6 @@ package mrmathami.cia.cpp.ast;
 import mrmathami.annotations.Internal;
 import mrmathami.annotations.Nonnull;
 import mrmathami.annotations.Nullable;
-import mrmathami.utils.IntsWrapper;
 import mrmathami.utils.Pair;
 import mrmathami.utils.Utilities;
 
@@ -12,22 +11,25 @@ import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 import static mrmathami.cia.cpp.ast.DependencyMap.DEPENDENCY_ZERO;
 
@@ -35,7 +37,9 @@ import static mrmathami.cia.cpp.ast.DependencyMap.DEPENDENCY_ZERO;
  * Base of AST Tree.
  */
 public abstract class CppNode implements Iterable<CppNode>, Externalizable {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
+
+	@Nonnull private static final CppNode[] EMPTY_CHILDREN = new CppNode[0];
 
 	private int id;
 
@@ -44,7 +48,9 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	@Nonnull private String signature = "";
 
 	@Nullable private CppNode parent;
-	@Nonnull private List<CppNode> children = new LinkedList<>();
+	@Nonnull private List<CppNode> children = new ArrayList<>();
+	@Nullable private CppNode[] kindChildren; // children grouped by kind, null if not created yet
+	@Nullable private int[] kindOffsets; // kind offsets in kindChildren, null if not created yet
 	@Nonnull private Map<CppNode, int[]> dependencyFrom = new IdentityHashMap<>();
 	@Nonnull private Map<CppNode, int[]> dependencyTo = new IdentityHashMap<>();
 
@@ -54,20 +60,6 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	CppNode() {
 	}
 
-	@Nonnull
-	private static String countsToString(@Nonnull int[] counts) {
-		final StringBuilder builder = new StringBuilder().append('{');
-		for (int type = 0; type < counts.length; type++) {
-			int typeCount = counts[type];
-			if (typeCount != 0) {
-				builder.append(builder.length() > 1 ? ", \"" : " \"")
-						.append(DependencyType.values.get(type)).append("\": ").append(typeCount);
-			}
-		}
-		if (builder.length() > 1) builder.append(' ');
-		return builder.append('}').toString();
-	}
-
 	static void escapeBody(@Nonnull StringBuilder builder, @Nonnull String body) {
 		for (final int codePoint : body.codePoints().toArray()) {
 			if (codePoint == '\\' || codePoint == '/' || codePoint == '"') {
@@ -170,7 +162,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 
 	@Nonnull
 	public final Set<CppNode> getAllDependencyFrom() {
-		return isWritable() ? Collections.unmodifiableSet(dependencyFrom.keySet()) : dependencyFrom.keySet();
+		return isWritable() ? Collections.unmodifiableSet(dependencyFrom.keySet()) : getGraph().dependencyFromSet(id);
 	}
 
 	@Internal
@@ -210,16 +202,18 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	}
 
 	public final boolean equalsAllDependencyFrom(@Nonnull CppNode node, @Nonnull Matcher matcher) {
-		if (dependencyFrom.size() != node.dependencyFrom.size()) return false;
-		final HashMap<Wrapper, int[]> nodeDependencyFrom = new HashMap<>();
-		for (final Map.Entry<CppNode, int[]> entry : node.dependencyFrom.entrySet()) {
+		final Map<CppNode, DependencyMap> dependencyFrom = dependencyFromMap();
+		final Map<CppNode, DependencyMap> otherDependencyFrom = node.dependencyFromMap();
+		if (dependencyFrom.size() != otherDependencyFrom.size()) return false;
+		final HashMap<Wrapper, DependencyMap> nodeDependencyFrom = new HashMap<>();
+		for (final Map.Entry<CppNode, DependencyMap> entry : otherDependencyFrom.entrySet()) {
 			final Wrapper wrapper = new Wrapper(entry.getKey(), MatchLevel.PROTOTYPE_IDENTICAL, matcher);
 			nodeDependencyFrom.put(wrapper, entry.getValue());
 		}
-		for (final Map.Entry<CppNode, int[]> entry : dependencyFrom.entrySet()) {
+		for (final Map.Entry<CppNode, DependencyMap> entry : dependencyFrom.entrySet()) {
 			final Wrapper wrapper = new Wrapper(entry.getKey(), MatchLevel.PROTOTYPE_IDENTICAL, matcher);
-			final int[] counts = nodeDependencyFrom.get(wrapper);
-			if (counts == null || !Arrays.equals(counts, entry.getValue())) return false;
+			final DependencyMap counts = nodeDependencyFrom.get(wrapper);
+			if (counts == null || !counts.equals(entry.getValue())) return false;
 			nodeDependencyFrom.remove(wrapper);
 		}
 		return nodeDependencyFrom.isEmpty();
@@ -231,7 +225,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 
 	@Nonnull
 	public final Set<CppNode> getAllDependencyTo() {
-		return isWritable() ? Collections.unmodifiableSet(dependencyTo.keySet()) : dependencyTo.keySet();
+		return isWritable() ? Collections.unmodifiableSet(dependencyTo.keySet()) : getGraph().dependencyToSet(id);
 	}
 
 	@Internal
@@ -271,18 +265,20 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	}
 
 	public final boolean equalsAllDependencyTo(@Nonnull CppNode node, @Nonnull Matcher matcher) {
+		final Map<CppNode, DependencyMap> dependencyTo = dependencyToMap();
+		final Map<CppNode, DependencyMap> otherDependencyTo = node.dependencyToMap();
 		final int dependencyToSize = dependencyTo.size();
-		if (dependencyToSize != node.dependencyTo.size()) return false;
-		final Map<Pair<Wrapper, IntsWrapper>, int[]> map = new HashMap<>(dependencyToSize);
-		for (final Map.Entry<CppNode, int[]> entry : node.dependencyTo.entrySet()) {
+		if (dependencyToSize != otherDependencyTo.size()) return false;
+		final Map<Pair<Wrapper, DependencyMap>, int[]> map = new HashMap<>(dependencyToSize);
+		for (final Map.Entry<CppNode, DependencyMap> entry : otherDependencyTo.entrySet()) {
 			final Wrapper wrapper = new Wrapper(entry.getKey(), MatchLevel.PROTOTYPE_IDENTICAL, matcher);
-			final Pair<Wrapper, IntsWrapper> pair = Pair.immutableOf(wrapper, IntsWrapper.of(entry.getValue()));
+			final Pair<Wrapper, DependencyMap> pair = Pair.immutableOf(wrapper, entry.getValue());
 			final int[] countWrapper = map.computeIfAbsent(pair, any -> new int[]{0});
 			countWrapper[0] += 1;
 		}
-		for (final Map.Entry<CppNode, int[]> entry : dependencyTo.entrySet()) {
+		for (final Map.Entry<CppNode, DependencyMap> entry : dependencyTo.entrySet()) {
 			final Wrapper wrapper = new Wrapper(entry.getKey(), MatchLevel.PROTOTYPE_IDENTICAL, matcher);
-			final Pair<Wrapper, IntsWrapper> pair = Pair.immutableOf(wrapper, IntsWrapper.of(entry.getValue()));
+			final Pair<Wrapper, DependencyMap> pair = Pair.immutableOf(wrapper, entry.getValue());
 			final int[] countWrapper = map.get(pair);
 			if (countWrapper == null) return false;
 			if (--countWrapper[0] == 0) map.remove(pair);
@@ -315,10 +311,15 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 
 	@Nonnull
 	public final DependencyMap getNodeDependencyTo(@Nonnull CppNode node) {
+		if (!isWritable()) {
+			final DependencyGraph graph = getGraph();
+			final int index = graph.contains(node) ? graph.findDependencyTo(id, node.id) : -1;
+			return index >= 0 ? graph.getDependencyToCounts(index) : DependencyMap.ZERO;
+		}
 		final int[] counts = dependencyTo.get(node);
 		assert counts == node.dependencyFrom.get(this) : "WRONG TREE DEPENDENCY CONSTRUCTION!";
 		if (counts == null) return DependencyMap.ZERO;
-		return new DependencyMap(counts);
+		return DependencyMap.of(counts);
 	}
 
 	@Internal
@@ -377,6 +378,11 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	//region Dependency To
 
 	public final int getDependencyTo(@Nonnull CppNode node, @Nonnull DependencyType type) {
+		if (!isWritable()) {
+			final DependencyGraph graph = getGraph();
+			final int index = graph.contains(node) ? graph.findDependencyTo(id, node.id) : -1;
+			return index >= 0 ? graph.getDependencyToCount(index, type) : 0;
+		}
 		final int[] counts = dependencyTo.get(node);
 		assert counts == node.dependencyFrom.get(this) : "WRONG TREE DEPENDENCY CONSTRUCTION!";
 		return counts != null ? counts[type.ordinal()] : 0;
@@ -384,15 +390,29 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 
 	@Internal
 	public final boolean addDependencyTo(@Nonnull CppNode node, @Nonnull DependencyType type) {
+		return addDependencyTo(node, type, 1);
+	}
+
+	/**
+	 * Add the same dependency multiple times at once.
+	 *
+	 * @param node the node depended on
+	 * @param type the dependency type
+	 * @param count the number of dependencies to add, must be positive
+	 * @return false if the dependency is not added, e.g. the node is this node or in another tree
+	 */
+	@Internal
+	public final boolean addDependencyTo(@Nonnull CppNode node, @Nonnull DependencyType type, int count) {
 		checkReadOnly();
+		assert count > 0;
 		if (node == this || getRoot() != node.getRoot()) return false;
 		final int[] counts = dependencyTo.get(node);
 		assert counts == node.dependencyFrom.get(this) : "WRONG TREE DEPENDENCY CONSTRUCTION!";
 		if (counts != null) {
-			counts[type.ordinal()] += 1;
+			counts[type.ordinal()] += count;
 		} else {
 			final int[] newCounts = new int[DependencyType.values.size()];
-			newCounts[type.ordinal()] += 1;
+			newCounts[type.ordinal()] += count;
 			dependencyTo.put(node, newCounts);
 			node.dependencyFrom.put(this, newCounts);
 		}
@@ -419,25 +439,86 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 
 	//region Object Helper
 
-	void internalLock(@Nonnull Map<String, String> stringPool, @Nonnull Map<DependencyMap, DependencyMap> countsPool) {
-		this.name = stringPool.computeIfAbsent(name, String::toString);
-		this.uniqueName = stringPool.computeIfAbsent(uniqueName, String::toString);
-		this.signature = stringPool.computeIfAbsent(signature, String::toString);
+	void internalLock(@Nonnull SymbolTable symbolTable, @Nonnull BodyStorage bodyStorage) {
+		this.name = symbolTable.intern(name);
+		this.uniqueName = symbolTable.intern(uniqueName);
+		this.signature = symbolTable.intern(signature);
 		this.children = List.copyOf(children);
+		this.writable = false;
+	}
 
-		for (final Map.Entry<CppNode, int[]> entry : dependencyFrom.entrySet()) {
-			final DependencyMap map = new DependencyMap(entry.getValue());
-			entry.setValue(countsPool.computeIfAbsent(map, DependencyMap::identity).getDependencies());
-		}
-		this.dependencyFrom = Map.copyOf(dependencyFrom);
+	/**
+	 * Get the dependency map used while the node is writable, or while the node is being read. Only used to create the
+	 * {@link DependencyGraph} of a tree.
+	 *
+	 * @return the raw dependency to map
+	 */
+	@Nonnull
+	final Map<CppNode, int[]> getRawDependencyTo() {
+		return dependencyTo;
+	}
 
-		for (final Map.Entry<CppNode, int[]> entry : dependencyTo.entrySet()) {
-			final DependencyMap map = new DependencyMap(entry.getValue());
-			entry.setValue(countsPool.computeIfAbsent(map, DependencyMap::identity).getDependencies());
-		}
-		this.dependencyTo = Map.copyOf(dependencyTo);
+	/**
+	 * Release the dependency maps after the {@link DependencyGraph} of the tree is created.
+	 */
+	final void releaseRawDependency() {
+		this.dependencyFrom = Map.of();
+		this.dependencyTo = Map.of();
+	}
 
-		this.writable = false;
+	/**
+	 * Set the root node of a locked tree, so that {@link #getRoot()} never caches it lazily.
+	 *
+	 * @param rootNode the root node
+	 */
+	final void internalSetRoot(@Nonnull CppNode rootNode) {
+		this.rootNode = rootNode;
+	}
+
+	/**
+	 * Release the children of a locked node once the node table is built, they are read from the table after that.
+	 */
+	final void releaseChildren() {
+		this.children = List.of();
+		this.kindChildren = null;
+		this.kindOffsets = null;
+	}
+
+	@Nonnull
+	private DependencyGraph getGraph() {
+		return ((RootNode) getRoot()).getDependencyGraph();
+	}
+
+	// the fingerprints are only available after the whole tree is locked
+	@Nullable
+	private long[] getLockedFingerprints() {
+		if (isWritable()) return null;
+		final CppNode root = getRoot();
+		return root instanceof RootNode ? ((RootNode) root).internalGetFingerprints() : null;
+	}
+
+	// the node table is only available after the whole tree is locked
+	@Nullable
+	private NodeTable getLockedTable() {
+		if (isWritable()) return null;
+		final CppNode root = getRoot();
+		return root instanceof RootNode ? ((RootNode) root).internalGetNodeTable() : null;
+	}
+
+	@Nonnull
+	private Map<CppNode, DependencyMap> dependencyFromMap() {
+		return isWritable() ? new CountsMap(dependencyFrom) : getGraph().dependencyFromMap(id);
+	}
+
+	@Nonnull
+	private Map<CppNode, DependencyMap> dependencyToMap() {
+		return isWritable() ? new CountsMap(dependencyTo) : getGraph().dependencyToMap(id);
+	}
+
+	private int dependencyToSize() {
+		if (isWritable()) return dependencyTo.size();
+		final DependencyGraph graph = getGraph();
+		return graph.getDependencyToEnd(id) - graph.getDependencyToStart(id);
 	}
 
 	final void checkReadOnly() {
@@ -479,16 +560,17 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		output.writeObject(uniqueName);
 		output.writeObject(signature);
 
+		final List<CppNode> children = getChildren();
 		output.writeInt(children.size());
 		for (final CppNode childNode : children) {
 			output.writeObject(childNode);
 		}
 
+		final Map<CppNode, DependencyMap> dependencyFrom = dependencyFromMap();
 		output.writeInt(dependencyFrom.size());
-		for (final Map.Entry<CppNode, int[]> entry : dependencyFrom.entrySet()) {
+		for (final Map.Entry<CppNode, DependencyMap> entry : dependencyFrom.entrySet()) {
 			output.writeObject(entry.getKey());
-			output.writeObject(entry.getValue());
-//			for (int count : entry.getValue()) output.writeInt(count);
+			entry.getValue().write(output);
 		}
 	}
 
@@ -512,11 +594,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		final int dependencySize = input.readInt();
 		for (int i = 0; i < dependencySize; i++) {
 			final CppNode dependingNode = castNonnull(input.readObject(), CppNode.class);
-			final int[] dependencyCounts = castNonnull(input.readObject(), int[].class);
-//			final int[] dependencyCounts = DEPENDENCY_ZERO.clone();
-//			for (int j = 0; j < dependencyCounts.length; j++) {
-//				dependencyCounts[j] = input.readInt();
-//			}
+			final int[] dependencyCounts = DependencyMap.read(input).toCounts();
 
 			dependencyFrom.put(dependingNode, dependencyCounts);
 			dependingNode.dependencyTo.put(this, dependencyCounts);
@@ -538,8 +616,8 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		return this == node || getClass() == node.getClass();
 	}
 
-	protected int prototypeSimilarHashcode(@Nonnull Matcher matcher) {
-		return getClass().hashCode();
+	protected long prototypeSimilarFingerprint(@Nonnull Matcher matcher) {
+		return Fingerprint.of(getClass());
 	}
 
 	/**
@@ -555,10 +633,10 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 				&& signature.equals(node.signature);
 	}
 
-	protected int prototypeIdenticalHashcode(@Nonnull Matcher matcher) {
-		int result = getClass().hashCode();
-		result = 31 * result + name.hashCode();
-		result = 31 * result + signature.hashCode();
+	protected long prototypeIdenticalFingerprint(@Nonnull Matcher matcher) {
+		long result = Fingerprint.of(getClass());
+		result = Fingerprint.combine(result, Fingerprint.of(name));
+		result = Fingerprint.combine(result, Fingerprint.of(signature));
 		return result;
 	}
 
@@ -578,12 +656,12 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 				&& matcher.isNodeMatch(parent, node.parent, MatchLevel.SIMILAR);
 	}
 
-	protected int similarHashcode(@Nonnull Matcher matcher) {
-		int result = getClass().hashCode();
-		result = 31 * result + name.hashCode();
-		result = 31 * result + uniqueName.hashCode();
-		result = 31 * result + signature.hashCode();
-		result = 31 * result + matcher.nodeHashcode(parent, MatchLevel.SIMILAR);
+	protected long similarFingerprint(@Nonnull Matcher matcher) {
+		long result = Fingerprint.of(getClass());
+		result = Fingerprint.combine(result, Fingerprint.of(name));
+		result = Fingerprint.combine(result, Fingerprint.of(uniqueName));
+		result = Fingerprint.combine(result, Fingerprint.of(signature));
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(parent, MatchLevel.SIMILAR));
 		return result;
 	}
 
@@ -604,21 +682,29 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 				&& equalsAllDependencyTo(node, matcher);
 	}
 
-	protected int identicalHashcode(@Nonnull Matcher matcher) {
-		int result = getClass().hashCode();
-		result = 31 * result + name.hashCode();
-		result = 31 * result + uniqueName.hashCode();
-		result = 31 * result + signature.hashCode();
-		result = 31 * result + matcher.nodeHashcode(parent, MatchLevel.SIMILAR);
-		result = 31 * result + dependencyTo.size();
+	protected long identicalFingerprint(@Nonnull Matcher matcher) {
+		long result = Fingerprint.of(getClass());
+		result = Fingerprint.combine(result, Fingerprint.of(name));
+		result = Fingerprint.combine(result, Fingerprint.of(uniqueName));
+		result = Fingerprint.combine(result, Fingerprint.of(signature));
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(parent, MatchLevel.SIMILAR));
+		result = Fingerprint.combine(result, dependencyToSize());
+		// the dependencies are compared as a multiset of (prototype identical target, counts), so their fingerprints
+		// are summed, which does not depend on the order
+		long dependencies = 0L;
+		for (final Map.Entry<CppNode, DependencyMap> entry : dependencyToMap().entrySet()) {
+			final long target = matcher.nodeFingerprint(entry.getKey(), MatchLevel.PROTOTYPE_IDENTICAL);
+			dependencies += Fingerprint.mix(Fingerprint.combine(target, entry.getValue().fingerprint()));
+		}
+		result = Fingerprint.combine(result, dependencies);
 		return result;
 	}
 
 	public enum MatchLevel {
-		PROTOTYPE_SIMILAR(CppNode::isPrototypeSimilar, CppNode::prototypeSimilarHashcode),
-		PROTOTYPE_IDENTICAL(CppNode::isPrototypeIdentical, CppNode::prototypeIdenticalHashcode),
-		SIMILAR(CppNode::isSimilar, CppNode::similarHashcode),
-		IDENTICAL(CppNode::isIdentical, CppNode::identicalHashcode);
+		PROTOTYPE_SIMILAR(CppNode::isPrototypeSimilar, CppNode::prototypeSimilarFingerprint),
+		PROTOTYPE_IDENTICAL(CppNode::isPrototypeIdentical, CppNode::prototypeIdenticalFingerprint),
+		SIMILAR(CppNode::isSimilar, CppNode::similarFingerprint),
+		IDENTICAL(CppNode::isIdentical, CppNode::identicalFingerprint);
 
 		static final MatchLevel[] values = values();
 
@@ -632,112 +718,149 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	}
 
 	public static final class Matcher {
-		@Nonnull private final Map<CppNode, int[]> hashcodeMap = new IdentityHashMap<>();
+		private static final int INITIAL_UNDO_CAPACITY = 64;
+
+		@Nonnull private final Map<CppNode, NodeInfo> nodeInfoMap = new IdentityHashMap<>();
 
-		@Nonnull private final Deque<Map<MatchLevel, Set<Pair<CppNode, CppNode>>>> positiveCacheStack;
-		@Nonnull private final Map<MatchLevel, Set<Pair<CppNode, CppNode>>> negativeCache;
+		// match level ordinal + 1 of each node pair key, zero if not cached
+		@Nonnull private final LongByteMap positiveCache = new LongByteMap(); // highest level proven to match
+		@Nonnull private final LongByteMap negativeCache = new LongByteMap(); // lowest level proven not to match
+
+		// old positive cache values, restored when a theory turns out to be wrong
+		@Nonnull private long[] undoKeys = new long[INITIAL_UNDO_CAPACITY];
+		@Nonnull private byte[] undoValues = new byte[INITIAL_UNDO_CAPACITY];
+		private int undoSize;
 
 		public Matcher() {
-			this.positiveCacheStack = new ArrayDeque<>(List.of(new EnumMap<>(MatchLevel.class)));
-			this.negativeCache = new EnumMap<>(MatchLevel.class);
+		}
+
+		@Nonnull
+		private NodeInfo nodeInfo(@Nonnull CppNode node) {
+			final NodeInfo nodeInfo = nodeInfoMap.get(node);
+			if (nodeInfo != null) return nodeInfo;
+			final NodeInfo newNodeInfo = new NodeInfo(nodeInfoMap.size());
+			nodeInfoMap.put(node, newNodeInfo);
+			return newNodeInfo;
+		}
+
+		private void putPositive(long key, byte level) {
+			final byte oldLevel = positiveCache.put(key, level);
+			if (undoSize == undoKeys.length) {
+				this.undoKeys = Arrays.copyOf(undoKeys, undoSize * 2);
+				this.undoValues = Arrays.copyOf(undoValues, undoSize * 2);
+			}
+			undoKeys[undoSize] = key;
+			undoValues[undoSize] = oldLevel;
+			undoSize += 1;
 		}
 
 		public boolean isNodeMatch(@Nullable CppNode nodeA, @Nullable CppNode nodeB, @Nonnull MatchLevel level) {
 			if (nodeA == nodeB) return true;
 			if (nodeA == null || nodeB == null) return false;
-			// This key will guarantee to work on when in same graph differ mode
-			final Pair<CppNode, CppNode> key = nodeA.hashCode() <= nodeB.hashCode()
-					? Pair.immutableOf(nodeA, nodeB)
-					: Pair.immutableOf(nodeB, nodeA);
+			// the pair key is unordered, the same in both directions
+			final int indexA = nodeInfo(nodeA).index;
+			final int indexB = nodeInfo(nodeB).index;
+			final long key = indexA < indexB
+					? (long) indexA << Integer.SIZE | indexB
+					: (long) indexB << Integer.SIZE | indexA;
+			final byte levelValue = (byte) (level.ordinal() + 1);
+
+			// === Fingerprint ===
+			// different fingerprints of two locked nodes -> not match. Only used on the identical level, the hashers of
+			// the lower levels are stricter than their matchers in a few corner cases, e.g. function return types.
+			if (level == MatchLevel.IDENTICAL) {
+				final long[] fingerprintsA = nodeA.getLockedFingerprints();
+				final long[] fingerprintsB = nodeB.getLockedFingerprints();
+				if (fingerprintsA != null && fingerprintsB != null && fingerprintsA[fingerprintIndex(nodeA.id, level)]
+						!= fingerprintsB[fingerprintIndex(nodeB.id, level)]) {
+					return false;
+				}
+			}
 
 			// === Negative cache ===
 			// negative cache hit on same or lower level -> not match
-			for (final Map.Entry<MatchLevel, Set<Pair<CppNode, CppNode>>> entry : negativeCache.entrySet()) {
-				final MatchLevel matchLevel = entry.getKey();
-				final Set<Pair<CppNode, CppNode>> levelCache = entry.getValue();
-				if (matchLevel.compareTo(level) <= 0 && levelCache.contains(key)) return false;
-			}
+			final byte negativeLevel = negativeCache.get(key);
+			if (negativeLevel != 0 && negativeLevel <= levelValue) return false;
 
-			// === Layered positive cache ===
+			// === Positive cache ===
 			// positive cache hit on same or higher level -> match
-			for (final Map<MatchLevel, Set<Pair<CppNode, CppNode>>> positiveCache : positiveCacheStack) {
-				for (Map.Entry<MatchLevel, Set<Pair<CppNode, CppNode>>> entry : positiveCache.entrySet()) {
-					final MatchLevel matchLevel = entry.getKey();
-					final Set<Pair<CppNode, CppNode>> levelCache = entry.getValue();
-					if (matchLevel.compareTo(level) >= 0 && levelCache.contains(key)) return true;
-				}
-			}
+			final byte positiveLevel = positiveCache.get(key);
+			if (positiveLevel >= levelValue) return true;
 
 			// ===  Calculate and compare ===
-			// create new layer of positive cache
-			final Map<MatchLevel, Set<Pair<CppNode, CppNode>>> newPositiveCache = new EnumMap<>(MatchLevel.class);
-			positiveCacheStack.push(newPositiveCache);
-
-			// create theory: current key is true
-			newPositiveCache.put(level, new HashSet<>(List.of(key)));
+			// create theory: current key is true, everything proven from now on depends on it
+			final int undoMark = undoSize;
+			putPositive(key, levelValue);
 
 			// prove the theory
 			final boolean result = level.matcher.isNodeMatch(nodeA, nodeB, this);
 
-			// remove new layer
-			positiveCacheStack.pop();
-
 			// check if the theory is incorrect
 			if (!result) {
-				// put the wrong theory to the negative cache
-				negativeCache.computeIfAbsent(level, any -> new HashSet<>());
-				for (final Map.Entry<MatchLevel, Set<Pair<CppNode, CppNode>>> entry : negativeCache.entrySet()) {
-					final MatchLevel matchLevel = entry.getKey();
-					final Set<Pair<CppNode, CppNode>> levelCache = entry.getValue();
-					final int compare = matchLevel.compareTo(level);
-					if (compare == 0) levelCache.add(key);
-					if (compare > 0) levelCache.remove(key); // purely for memory and anti-rehash
+				// undo everything proven on top of the wrong theory
+				while (undoSize > undoMark) {
+					undoSize -= 1;
+					positiveCache.put(undoKeys[undoSize], undoValues[undoSize]);
 				}
+				// put the wrong theory to the negative cache
+				if (negativeLevel == 0 || negativeLevel > levelValue) negativeCache.put(key, levelValue);
 				return false;
 			}
 
-			// theory is correct! -> combine the positive cache
-			final Map<MatchLevel, Set<Pair<CppNode, CppNode>>> positiveCache = positiveCacheStack.peek();
-			assert positiveCache != null;
-			// for each level of the new positive cache...
-			for (final Map.Entry<MatchLevel, Set<Pair<CppNode, CppNode>>> newEntry : newPositiveCache.entrySet()) {
-				final MatchLevel newMatchLevel = newEntry.getKey();
-				final Set<Pair<CppNode, CppNode>> newLevelCache = newEntry.getValue();
-				// ... with each level of the current positive cache...
-				for (final Map.Entry<MatchLevel, Set<Pair<CppNode, CppNode>>> entry : positiveCache.entrySet()) {
-					final MatchLevel matchLevel = entry.getKey();
-					final Set<Pair<CppNode, CppNode>> levelCache = entry.getValue();
-					final int compare = matchLevel.compareTo(newMatchLevel);
-					if (compare < 0) {
-						// if the level of the current positive cache is lower than the level of the new positive cache
-						// remove all positive cached key that exist but has lower lever than current positive cache
-						levelCache.removeAll(newLevelCache);
-					} else if (compare == 0) {
-						// if the current positive cache and the new positive cache is at the same level
-						// add all positive cached key from the new positive cache to the current positive cache
-						levelCache.addAll(newLevelCache);
-					}
-				}
-			}
+			// theory is correct! -> keep the positive cache, and forget the undo log if no theory is left
+			if (undoMark == 0) this.undoSize = 0;
 			return true;
 		}
 
 		public int nodeHashcode(@Nullable CppNode node, @Nonnull MatchLevel level) {
-			if (node == null) return 0;
-			final int[] hashcodes = hashcodeMap.get(node);
-			if (hashcodes == null) {
-				final int[] newHashcodes = new int[MatchLevel.values.length];
-				final int newHashcode = level.hasher.nodeHashcode(node, this);
-				newHashcodes[level.ordinal()] = newHashcode;
-				hashcodeMap.put(node, newHashcodes);
-				return newHashcode;
-			} else if (hashcodes[level.ordinal()] == 0) {
-				final int newHashcode = level.hasher.nodeHashcode(node, this);
-				hashcodes[level.ordinal()] = newHashcode;
-				return newHashcode;
-			} else {
-				return hashcodes[level.ordinal()];
+			final long fingerprint = nodeFingerprint(node, level);
+			return (int) (fingerprint ^ fingerprint >>> 32);
+		}
+
+		/**
+		 * Get the 64-bit fingerprint of a node at a match level. Nodes that match at a level have the same fingerprint
+		 * at that level. The fingerprints of locked trees are computed once at lock time and shared by all matchers.
+		 *
+		 * @param node the node
+		 * @param level the match level
+		 * @return the fingerprint, zero if the node is null
+		 */
+		public long nodeFingerprint(@Nullable CppNode node, @Nonnull MatchLevel level) {
+			if (node == null) return 0L;
+			final long[] lockedFingerprints = node.getLockedFingerprints();
+			if (lockedFingerprints != null) return lockedFingerprints[fingerprintIndex(node.id, level)];
+			final long[] fingerprints = nodeInfo(node).fingerprints;
+			if (fingerprints[level.ordinal()] == 0L) {
+				final long newFingerprint = level.hasher.nodeFingerprint(node, this);
+				fingerprints[level.ordinal()] = newFingerprint;
+				return newFingerprint;
 			}
+			return fingerprints[level.ordinal()];
+		}
+
+		static int fingerprintIndex(int id, @Nonnull MatchLevel level) {
+			return id * MatchLevel.values.length + level.ordinal();
+		}
+
+		/**
+		 * Compute the fingerprints of all nodes of a locked tree, at all match levels.
+		 *
+		 * @param table the node table of the tree
+		 * @return the fingerprints, indexed by {@link #fingerprintIndex}
+		 */
+		@Nonnull
+		static long[] computeFingerprints(@Nonnull NodeTable table) {
+			final Matcher matcher = new Matcher();
+			final int nodeCount = table.getNodeCount();
+			final long[] fingerprints = new long[nodeCount * MatchLevel.values.length];
+			// ids are in preorder, so parents come before their children
+			for (int id = 0; id < nodeCount; id++) {
+				final CppNode node = table.getNode(id);
+				for (final MatchLevel level : MatchLevel.values) {
+					fingerprints[fingerprintIndex(id, level)] = matcher.nodeFingerprint(node, level);
+				}
+			}
+			return fingerprints;
 		}
 
 		public boolean isNodesMatchUnordered(@Nonnull Collection<CppNode> nodesA, @Nonnull Collection<CppNode> nodesB,
@@ -771,12 +894,21 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		}
 	}
 
+	private static final class NodeInfo {
+		private final int index; // index of the node in its matcher
+		@Nonnull private final long[] fingerprints = new long[MatchLevel.values.length]; // zero if not computed
+
+		NodeInfo(int index) {
+			this.index = index;
+		}
+	}
+
 	private interface InternalMatcher {
 		boolean isNodeMatch(@Nonnull CppNode nodeA, @Nonnull CppNode nodeB, @Nonnull Matcher matcher);
 	}
 
 	private interface InternalHasher {
-		int nodeHashcode(@Nonnull CppNode node, @Nonnull Matcher matcher);
+		long nodeFingerprint(@Nonnull CppNode node, @Nonnull Matcher matcher);
 	}
 
 	public static final class Wrapper {
@@ -825,7 +957,8 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	//region TreeNode
 
 	/**
-	 * Return the root node.
+	 * Return the root node. The root of a locked tree is set when the tree is locked or read, so this method does not
+	 * write anything on a locked tree.
 	 *
 	 * @return root node
 	 */
@@ -858,14 +991,83 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	 * @return true if this node is a descendant
 	 */
 	public final boolean isAncestorOf(@Nonnull CppNode node) {
-		return node.parent == this || node.parent != null && isAncestorOf(node.parent);
+		final NodeTable table = getLockedTable();
+		if (table != null && table.contains(node)) return table.isAncestorOf(id, node.id);
+		for (CppNode current = node.parent; current != null; current = current.parent) {
+			if (current == this) return true;
+		}
+		return false;
 	}
 
+	/**
+	 * Get a read-only list of children nodes of a kind. The children of a writable node are grouped by kind once, when
+	 * first needed after any change, so the returned list is a view that does not need any copying or instance
+	 * checking. The children of a locked node are read from the node table.
+	 *
+	 * @param aClass class of the node kind
+	 * @param <E> the node kind
+	 * @return read-only list of children nodes of the kind
+	 */
 	@Nonnull
 	final <E extends CppNode> List<E> getChildrenList(@Nonnull Class<E> aClass) {
-		final List<E> list = new ArrayList<>(children.size());
-		for (final CppNode child : children) if (aClass.isInstance(child)) list.add(aClass.cast(child));
-		return list;
+		final int kind = NodeTable.kindOf(aClass);
+		final NodeTable table = getLockedTable();
+		if (table != null) {
+			// the children of a locked node are in the table, which already knows the kind of every node
+			final int start = table.getChildStart(id);
+			final int end = table.getChildEnd(id);
+			final List<E> list = new ArrayList<>(end - start);
+			for (int index = start; index < end; index++) {
+				final int childId = table.getChildId(index);
+				final CppNode child = table.getNode(childId);
+				if (kind >= 0 ? table.isNodeClass(childId, aClass) : aClass.isInstance(child)) {
+					list.add(aClass.cast(child));
+				}
+			}
+			return list.isEmpty() ? List.of() : Collections.unmodifiableList(list);
+		}
+		if (kind < 0) {
+			final List<E> list = new ArrayList<>(children.size());
+			for (final CppNode child : children) if (aClass.isInstance(child)) list.add(aClass.cast(child));
+			return list;
+		}
+		if (kindOffsets == null) createKindChildren();
+		final CppNode[] kindChildren = this.kindChildren;
+		final int[] kindOffsets = this.kindOffsets;
+		assert kindChildren != null && kindOffsets != null;
+		final int start = kindOffsets[kind];
+		final int end = kindOffsets[kind + 1];
+		return start < end ? new KindList<>(aClass, kindChildren, start, end) : List.of();
+	}
+
+	private void createKindChildren() {
+		final int kindCount = NodeTable.KINDS.size();
+		final int[] kindOffsets = new int[kindCount + 1];
+		if (children.isEmpty()) {
+			this.kindChildren = EMPTY_CHILDREN;
+			this.kindOffsets = kindOffsets;
+			return;
+		}
+		final int[] childKinds = new int[children.size()];
+		int index = 0;
+		for (final CppNode child : children) {
+			final int kind = NodeTable.kindOf(child.getClass());
+			childKinds[index++] = kind;
+			kindOffsets[kind + 1] += 1;
+		}
+		for (int kind = 0; kind < kindCount; kind++) kindOffsets[kind + 1] += kindOffsets[kind];
+		final CppNode[] kindChildren = new CppNode[children.size()];
+		final int[] positions = Arrays.copyOf(kindOffsets, kindCount);
+		index = 0;
+		for (final CppNode child : children) kindChildren[positions[childKinds[index++]]++] = child;
+		this.kindChildren = kindChildren;
+		this.kindOffsets = kindOffsets;
+	}
+
+	// the grouped children are replaced, not modified, so views created before a change stay untouched
+	private void childrenChanged() {
+		this.kindChildren = null;
+		this.kindOffsets = null;
 	}
 
 	/**
@@ -875,7 +1077,9 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	 */
 	@Nonnull
 	public final List<CppNode> getChildren() {
-		return isWritable() ? Collections.unmodifiableList(children) : children;
+		if (isWritable()) return Collections.unmodifiableList(children);
+		final NodeTable table = getLockedTable();
+		return table != null ? new TableChildren(table, table.getChildStart(id), table.getChildEnd(id)) : children;
 	}
 
 	/**
@@ -895,6 +1099,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 			child.parent = null;
 			iterator.remove();
 		}
+		childrenChanged();
 	}
 
 	private void internalRemoveDependencyRecursive() {
@@ -923,6 +1128,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		final CppNode root = getRoot();
 		assert child.parent == null && root != child;
 		children.add(child);
+		childrenChanged();
 		child.parent = this;
 		child.setRootRecursive(root);
 	}
@@ -961,6 +1167,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		child.parent = null;
 		child.setRootRecursive(null);
 		children.remove(child);
+		childrenChanged();
 	}
 
 	/**
@@ -979,11 +1186,14 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		transferAllDependency(node);
 		if (!children.isEmpty()) {
 			node.children.addAll(children);
+			node.childrenChanged();
 			for (final CppNode child : children) child.parent = node;
 			children.clear();
+			childrenChanged();
 		}
 		assert parent != null;
 		parent.children.remove(this);
+		parent.childrenChanged();
 		this.parent = null;
 	}
 
@@ -1015,6 +1225,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 			child.parent = null;
 			iterator.remove();
 		}
+		childrenChanged();
 	}
 
 	@Internal
@@ -1036,7 +1247,9 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 			child.parent = null;
 			iterator.remove();
 		}
+		childrenChanged();
 		parent.children.remove(this);
+		parent.childrenChanged();
 		this.parent = null;
 	}
 
@@ -1049,7 +1262,9 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		checkReadOnly();
 		assert parent != null && getRoot() == newParent.getRoot() && !isAncestorOf(newParent);
 		parent.children.remove(this);
+		parent.childrenChanged();
 		newParent.children.add(this);
+		newParent.childrenChanged();
 		this.parent = newParent;
 	}
 
@@ -1077,8 +1292,8 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	@Nonnull
 	private String innerElementString() {
 		return innerHeaderString()
-				+ ", \"dependencyFrom\": " + Utilities.mapToString(dependencyFrom, null, CppNode::countsToString)
-				+ ", \"dependencyTo\": " + Utilities.mapToString(dependencyTo, null, CppNode::countsToString)
+				+ ", \"dependencyFrom\": " + Utilities.mapToString(dependencyFromMap(), null, DependencyMap::toString)
+				+ ", \"dependencyTo\": " + Utilities.mapToString(dependencyToMap(), null, DependencyMap::toString)
 				+ partialElementString();
 	}
 
@@ -1094,6 +1309,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		final String alignString = "\t".repeat(level);
 		builder.append(alignString).append("{ ")
 				.append(innerElementString().replace("\n", "\n" + alignString));
+		final List<CppNode> children = getChildren();
 		if (children.isEmpty()) {
 			builder.append(" }");
 		} else {
@@ -1118,9 +1334,29 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 	@Nonnull
 	@Override
 	public final Iterator<CppNode> iterator() {
+		final NodeTable table = getLockedTable();
+		if (table != null) return new RangeIterator(table.getNodes(), id + 1, table.getSubtreeEnd(id));
 		return new NodeIterator(this, null);
 	}
 
+	/**
+	 * Return this tree spliterator. The spliterator of a locked tree is sized and splits evenly over the id range of the
+	 * subtree, so a parallel stream over it scales with the tree size.
+	 *
+	 * @return the spliterator
+	 */
+	@Nonnull
+	@Override
+	public final Spliterator<CppNode> spliterator() {
+		final NodeTable table = getLockedTable();
+		if (table != null) {
+			return Spliterators.spliterator(table.getNodes(), id + 1, table.getSubtreeEnd(id),
+					Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+		}
+		return Spliterators.spliteratorUnknownSize(iterator(),
+				Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+	}
+
 	/**
 	 * Return this tree iterator and auto skip the specified node
 	 *
@@ -1132,6 +1368,138 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		return new NodeIterator(this, skippedNode);
 	}
 
+	// read-only view of a writable dependency map, see DependencyGraph for the locked one
+	private static final class CountsMap extends AbstractMap<CppNode, DependencyMap> {
+		@Nonnull private final Map<CppNode, int[]> dependencyMap;
+
+		CountsMap(@Nonnull Map<CppNode, int[]> dependencyMap) {
+			this.dependencyMap = dependencyMap;
+		}
+
+		@Override
+		public int size() {
+			return dependencyMap.size();
+		}
+
+		@Override
+		public boolean containsKey(@Nullable Object object) {
+			return dependencyMap.containsKey(object);
+		}
+
+		@Nullable
+		@Override
+		public DependencyMap get(@Nullable Object object) {
+			final int[] counts = dependencyMap.get(object);
+			return counts != null ? DependencyMap.of(counts) : null;
+		}
+
+		@Nonnull
+		@Override
+		public Set<Entry<CppNode, DependencyMap>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public int size() {
+					return dependencyMap.size();
+				}
+
+				@Nonnull
+				@Override
+				public Iterator<Entry<CppNode, DependencyMap>> iterator() {
+					final Iterator<Entry<CppNode, int[]>> iterator = dependencyMap.entrySet().iterator();
+					return new Iterator<>() {
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+
+						@Nonnull
+						@Override
+						public Entry<CppNode, DependencyMap> next() {
+							final Entry<CppNode, int[]> entry = iterator.next();
+							return new SimpleImmutableEntry<>(entry.getKey(), DependencyMap.of(entry.getValue()));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private static final class KindList<E extends CppNode> extends AbstractList<E> implements RandomAccess {
+		@Nonnull private final Class<E> aClass;
+		@Nonnull private final CppNode[] kindChildren;
+		private final int start;
+		private final int end;
+
+		KindList(@Nonnull Class<E> aClass, @Nonnull CppNode[] kindChildren, int start, int end) {
+			this.aClass = aClass;
+			this.kindChildren = kindChildren;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Nonnull
+		@Override
+		public E get(int index) {
+			if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException(index);
+			return aClass.cast(kindChildren[start + index]);
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+
+	// children of a locked node, read from the node table
+	private static final class TableChildren extends AbstractList<CppNode> implements RandomAccess {
+		@Nonnull private final NodeTable table;
+		private final int start;
+		private final int end;
+
+		TableChildren(@Nonnull NodeTable table, int start, int end) {
+			this.table = table;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Nonnull
+		@Override
+		public CppNode get(int index) {
+			if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException(index);
+			return table.getNode(table.getChildId(start + index));
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+
+	// preorder iterator of a locked subtree, which is a contiguous id range
+	private static final class RangeIterator implements Iterator<CppNode> {
+		@Nonnull private final CppNode[] nodes;
+		private final int end;
+		private int index;
+
+		RangeIterator(@Nonnull CppNode[] nodes, int start, int end) {
+			this.nodes = nodes;
+			this.index = start;
+			this.end = end;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < end;
+		}
+
+		@Nonnull
+		@Override
+		public CppNode next() {
+			if (index >= end) throw new NoSuchElementException();
+			return nodes[index++];
+		}
+	}
+
 	private static final class NodeIterator implements Iterator<CppNode> {
 		@Nonnull private final Deque<Iterator<CppNode>> stack = new ArrayDeque<>();
 		@Nullable private final CppNode skippedNode;
@@ -1146,7 +1514,7 @@ public abstract class CppNode implements Iterable<CppNode>, Externalizable {
 		@Override
 		public boolean hasNext() {
 			if (available) return true;
-			stack.push(currentMode.children.iterator());
+			stack.push(currentMode.getChildren().iterator());
 			while (true) {
 				final Iterator<CppNode> iterator = stack.peek();
 				if (iterator == null) return false;
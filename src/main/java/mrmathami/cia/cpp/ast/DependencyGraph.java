@@ -0,0 +1,438 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compressed sparse row dependency graph of a locked tree. Nodes are indexed by their ids, which are dense from zero to
+ * node count. For each direction, the dependencies of node {@code id} are the edges from {@code getXxxStart(id)}
+ * (inclusive) to {@code getXxxEnd(id)} (exclusive), sorted by the id of the other node. The per-type counts of each
+ * edge are packed into one {@code long} as in {@link DependencyMap}, and the rare edges whose counts do not fit are kept
+ * in a side table.
+ */
+public final class DependencyGraph {
+	@Nonnull private final CppNode[] nodes;
+
+	@Nonnull private final GraphStorage storage;
+
+	@Nonnull private final IntBuffer fromOffsets;
+	@Nonnull private final IntBuffer fromIds;
+	@Nonnull private final LongBuffer fromCounts;
+	@Nonnull private final Map<Integer, int[]> fromOverflows;
+
+	@Nonnull private final IntBuffer toOffsets;
+	@Nonnull private final IntBuffer toIds;
+	@Nonnull private final LongBuffer toCounts;
+	@Nonnull private final Map<Integer, int[]> toOverflows;
+
+	private DependencyGraph(@Nonnull CppNode[] nodes, @Nonnull GraphStorage storage,
+			@Nonnull IntBuffer fromOffsets, @Nonnull IntBuffer fromIds, @Nonnull LongBuffer fromCounts,
+			@Nonnull Map<Integer, int[]> fromOverflows,
+			@Nonnull IntBuffer toOffsets, @Nonnull IntBuffer toIds, @Nonnull LongBuffer toCounts,
+			@Nonnull Map<Integer, int[]> toOverflows) {
+		this.nodes = nodes;
+		this.storage = storage;
+		this.fromOffsets = fromOffsets;
+		this.fromIds = fromIds;
+		this.fromCounts = fromCounts;
+		this.fromOverflows = fromOverflows;
+		this.toOffsets = toOffsets;
+		this.toIds = toIds;
+		this.toCounts = toCounts;
+		this.toOverflows = toOverflows;
+	}
+
+	/**
+	 * Create the graph from the dependency maps of the nodes of a tree.
+	 *
+	 * @param table the node table of the tree
+	 * @param storage the graph storage
+	 * @return the graph
+	 */
+	@Nonnull
+	static DependencyGraph build(@Nonnull NodeTable table, @Nonnull GraphStorage storage) {
+		final CppNode[] nodes = table.getNodes();
+		final int nodeCount = nodes.length;
+
+		// dependency to, sorted by target id
+		final int[] toOffsets = new int[nodeCount + 1];
+		for (int id = 0; id < nodeCount; id++) {
+			toOffsets[id + 1] = toOffsets[id] + nodes[id].getRawDependencyTo().size();
+		}
+		final int edgeCount = toOffsets[nodeCount];
+		final int[] toIds = new int[edgeCount];
+		final long[] toCounts = new long[edgeCount];
+		final Map<Integer, int[]> toOverflows = new HashMap<>();
+		final int[] fromOffsets = new int[nodeCount + 1];
+		for (int id = 0; id < nodeCount; id++) {
+			final Map<CppNode, int[]> dependencyTo = nodes[id].getRawDependencyTo();
+			final int start = toOffsets[id];
+			int index = start;
+			for (final CppNode node : dependencyTo.keySet()) {
+				final int nodeId = node.getId();
+				if (nodeId < 0 || nodeId >= nodeCount || nodes[nodeId] != node) {
+					throw new IllegalStateException("Dependency to a node outside of the tree!");
+				}
+				toIds[index++] = nodeId;
+				fromOffsets[nodeId + 1] += 1;
+			}
+			Arrays.sort(toIds, start, index);
+			for (int edge = start; edge < index; edge++) {
+				final int[] counts = dependencyTo.get(nodes[toIds[edge]]);
+				final long packed = DependencyMap.pack(counts);
+				toCounts[edge] = packed;
+				if (packed == DependencyMap.PACKED_OVERFLOW) toOverflows.put(edge, counts.clone());
+			}
+		}
+
+		// dependency from, transposed from dependency to so the source ids are already sorted
+		for (int id = 0; id < nodeCount; id++) fromOffsets[id + 1] += fromOffsets[id];
+		final int[] fromIds = new int[edgeCount];
+		final long[] fromCounts = new long[edgeCount];
+		final Map<Integer, int[]> fromOverflows = new HashMap<>();
+		final int[] fromPositions = Arrays.copyOf(fromOffsets, nodeCount);
+		for (int id = 0; id < nodeCount; id++) {
+			for (int edge = toOffsets[id]; edge < toOffsets[id + 1]; edge++) {
+				final int position = fromPositions[toIds[edge]]++;
+				fromIds[position] = id;
+				fromCounts[position] = toCounts[edge];
+				if (toCounts[edge] == DependencyMap.PACKED_OVERFLOW) fromOverflows.put(position, toOverflows.get(edge));
+			}
+		}
+
+		return new DependencyGraph(nodes, storage,
+				storeInts(fromOffsets, storage), storeInts(fromIds, storage), storeLongs(fromCounts, storage),
+				Map.copyOf(fromOverflows),
+				storeInts(toOffsets, storage), storeInts(toIds, storage), storeLongs(toCounts, storage),
+				Map.copyOf(toOverflows));
+	}
+
+	/**
+	 * Copy the graph to another storage. The node objects are shared.
+	 *
+	 * @param storage the new graph storage
+	 * @return the graph in the new storage, or this graph if it is already there
+	 */
+	@Nonnull
+	DependencyGraph toStorage(@Nonnull GraphStorage storage) {
+		if (storage == this.storage) return this;
+		return new DependencyGraph(nodes, storage,
+				copyInts(fromOffsets, storage), copyInts(fromIds, storage), copyLongs(fromCounts, storage),
+				fromOverflows,
+				copyInts(toOffsets, storage), copyInts(toIds, storage), copyLongs(toCounts, storage),
+				toOverflows);
+	}
+
+	@Nonnull
+	private static IntBuffer storeInts(@Nonnull int[] array, @Nonnull GraphStorage storage) {
+		if (storage == GraphStorage.HEAP) return IntBuffer.wrap(array);
+		final IntBuffer buffer = ByteBuffer.allocateDirect(directSize(array.length, Integer.BYTES))
+				.order(ByteOrder.nativeOrder()).asIntBuffer();
+		return buffer.put(array).clear();
+	}
+
+	@Nonnull
+	private static LongBuffer storeLongs(@Nonnull long[] array, @Nonnull GraphStorage storage) {
+		if (storage == GraphStorage.HEAP) return LongBuffer.wrap(array);
+		final LongBuffer buffer = ByteBuffer.allocateDirect(directSize(array.length, Long.BYTES))
+				.order(ByteOrder.nativeOrder()).asLongBuffer();
+		return buffer.put(array).clear();
+	}
+
+	private static int directSize(int length, int elementSize) {
+		try {
+			return Math.multiplyExact(length, elementSize);
+		} catch (ArithmeticException exception) {
+			throw new IllegalStateException("Dependency graph is too large for direct storage: " + length
+					+ " elements of " + elementSize + " bytes do not fit in one buffer!", exception);
+		}
+	}
+
+	@Nonnull
+	private static IntBuffer copyInts(@Nonnull IntBuffer buffer, @Nonnull GraphStorage storage) {
+		final int[] array = new int[buffer.limit()];
+		buffer.duplicate().clear().get(array);
+		return storeInts(array, storage);
+	}
+
+	@Nonnull
+	private static LongBuffer copyLongs(@Nonnull LongBuffer buffer, @Nonnull GraphStorage storage) {
+		final long[] array = new long[buffer.limit()];
+		buffer.duplicate().clear().get(array);
+		return storeLongs(array, storage);
+	}
+
+	private static int count(@Nonnull LongBuffer counts, @Nonnull Map<Integer, int[]> overflows, int index,
+			@Nonnull DependencyType type) {
+		final long packed = counts.get(index);
+		if (packed != DependencyMap.PACKED_OVERFLOW) return DependencyMap.unpack(packed, type.ordinal());
+		final int[] overflow = overflows.get(index);
+		assert overflow != null;
+		return overflow[type.ordinal()];
+	}
+
+	@Nonnull
+	private static DependencyMap dependencyMap(@Nonnull LongBuffer counts, @Nonnull Map<Integer, int[]> overflows,
+			int index) {
+		final long packed = counts.get(index);
+		return DependencyMap.of(packed, packed != DependencyMap.PACKED_OVERFLOW ? null : overflows.get(index));
+	}
+
+	private static int find(@Nonnull IntBuffer offsets, @Nonnull IntBuffer ids, int id, int otherId) {
+		return search(ids, offsets.get(id), offsets.get(id + 1), otherId);
+	}
+
+	private static int search(@Nonnull IntBuffer ids, int start, int end, int key) {
+		int low = start;
+		int high = end - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int value = ids.get(middle);
+			if (value < key) {
+				low = middle + 1;
+			} else if (value > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	@Nonnull
+	public GraphStorage getStorage() {
+		return storage;
+	}
+
+	//region Nodes
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * Get the number of dependency edges. Edge indices in both directions are in range [0, dependencyCount).
+	 *
+	 * @return the dependency edge count
+	 */
+	public int getDependencyCount() {
+		return toIds.limit();
+	}
+
+	@Nonnull
+	public CppNode getNode(int id) {
+		return nodes[id];
+	}
+
+	boolean contains(@Nonnull CppNode node) {
+		final int id = node.getId();
+		return id >= 0 && id < nodes.length && nodes[id] == node;
+	}
+
+	//endregion Nodes
+
+	//region Dependency From
+
+	public int getDependencyFromStart(int id) {
+		return fromOffsets.get(id);
+	}
+
+	public int getDependencyFromEnd(int id) {
+		return fromOffsets.get(id + 1);
+	}
+
+	public int getDependencyFromId(int index) {
+		return fromIds.get(index);
+	}
+
+	public int getDependencyFromCount(int index, @Nonnull DependencyType type) {
+		return count(fromCounts, fromOverflows, index, type);
+	}
+
+	@Nonnull
+	public DependencyMap getDependencyFromCounts(int index) {
+		return dependencyMap(fromCounts, fromOverflows, index);
+	}
+
+	int findDependencyFrom(int id, int fromId) {
+		return find(fromOffsets, fromIds, id, fromId);
+	}
+
+	//endregion Dependency From
+
+	//region Dependency To
+
+	public int getDependencyToStart(int id) {
+		return toOffsets.get(id);
+	}
+
+	public int getDependencyToEnd(int id) {
+		return toOffsets.get(id + 1);
+	}
+
+	public int getDependencyToId(int index) {
+		return toIds.get(index);
+	}
+
+	public int getDependencyToCount(int index, @Nonnull DependencyType type) {
+		return count(toCounts, toOverflows, index, type);
+	}
+
+	@Nonnull
+	public DependencyMap getDependencyToCounts(int index) {
+		return dependencyMap(toCounts, toOverflows, index);
+	}
+
+	int findDependencyTo(int id, int toId) {
+		return find(toOffsets, toIds, id, toId);
+	}
+
+	//endregion Dependency To
+
+	//region Views
+
+	@Nonnull
+	Set<CppNode> dependencyFromSet(int id) {
+		return new NodeSet(fromOffsets.get(id), fromOffsets.get(id + 1), fromIds);
+	}
+
+	@Nonnull
+	Set<CppNode> dependencyToSet(int id) {
+		return new NodeSet(toOffsets.get(id), toOffsets.get(id + 1), toIds);
+	}
+
+	@Nonnull
+	Map<CppNode, DependencyMap> dependencyFromMap(int id) {
+		return new CountsMap(fromOffsets.get(id), fromOffsets.get(id + 1), fromIds, fromCounts, fromOverflows);
+	}
+
+	@Nonnull
+	Map<CppNode, DependencyMap> dependencyToMap(int id) {
+		return new CountsMap(toOffsets.get(id), toOffsets.get(id + 1), toIds, toCounts, toOverflows);
+	}
+
+	private final class NodeSet extends AbstractSet<CppNode> {
+		private final int start;
+		private final int end;
+		@Nonnull private final IntBuffer ids;
+
+		NodeSet(int start, int end, @Nonnull IntBuffer ids) {
+			this.start = start;
+			this.end = end;
+			this.ids = ids;
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+
+		@Override
+		public boolean contains(@Nullable Object object) {
+			return object instanceof CppNode && DependencyGraph.this.contains((CppNode) object)
+					&& search(ids, start, end, ((CppNode) object).getId()) >= 0;
+		}
+
+		@Nonnull
+		@Override
+		public Iterator<CppNode> iterator() {
+			return new Iterator<>() {
+				private int index = start;
+
+				@Override
+				public boolean hasNext() {
+					return index < end;
+				}
+
+				@Nonnull
+				@Override
+				public CppNode next() {
+					if (index >= end) throw new NoSuchElementException();
+					return nodes[ids.get(index++)];
+				}
+			};
+		}
+	}
+
+	private final class CountsMap extends AbstractMap<CppNode, DependencyMap> {
+		private final int start;
+		private final int end;
+		@Nonnull private final IntBuffer ids;
+		@Nonnull private final LongBuffer counts;
+		@Nonnull private final Map<Integer, int[]> overflows;
+
+		CountsMap(int start, int end, @Nonnull IntBuffer ids, @Nonnull LongBuffer counts,
+				@Nonnull Map<Integer, int[]> overflows) {
+			this.start = start;
+			this.end = end;
+			this.ids = ids;
+			this.counts = counts;
+			this.overflows = overflows;
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+
+		@Override
+		public boolean containsKey(@Nullable Object object) {
+			return get(object) != null;
+		}
+
+		@Nullable
+		@Override
+		public DependencyMap get(@Nullable Object object) {
+			if (!(object instanceof CppNode) || !DependencyGraph.this.contains((CppNode) object)) return null;
+			final int index = search(ids, start, end, ((CppNode) object).getId());
+			return index >= 0 ? dependencyMap(counts, overflows, index) : null;
+		}
+
+		@Nonnull
+		@Override
+		public Set<Entry<CppNode, DependencyMap>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public int size() {
+					return end - start;
+				}
+
+				@Nonnull
+				@Override
+				public Iterator<Entry<CppNode, DependencyMap>> iterator() {
+					return new Iterator<>() {
+						private int index = start;
+
+						@Override
+						public boolean hasNext() {
+							return index < end;
+						}
+
+						@Nonnull
+						@Override
+						public Entry<CppNode, DependencyMap> next() {
+							if (index >= end) throw new NoSuchElementException();
+							final int current = index++;
+							return new SimpleImmutableEntry<>(nodes[ids.get(current)], dependencyMap(counts, overflows, current));
+						}
+					};
+				}
+			};
+		}
+	}
+
+	//endregion Views
+}
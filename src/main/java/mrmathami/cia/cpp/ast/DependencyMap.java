@@ -3,41 +3,130 @@ package mrmathami.cia.cpp.ast;
 import mrmathami.annotations.Nonnull;
 import mrmathami.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Arrays;
 
+/**
+ * Immutable dependency counts of one dependency, one counter per {@link DependencyType}. The counters are packed into a
+ * single {@code long}, {@value #COUNT_BITS} bits each. When a counter does not fit, the packed value only holds the
+ * {@link #PACKED_OVERFLOW} flag and the counters are kept in a side array instead.
+ */
 public final class DependencyMap {
-	@Nonnull static final int[] DEPENDENCY_ZERO = new int[DependencyType.values.size()];
-	@Nonnull static final DependencyMap ZERO = new DependencyMap(DEPENDENCY_ZERO);
+	private static final int TYPES = DependencyType.values.size();
+	private static final int COUNT_BITS = 12;
+	private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+	static final long PACKED_OVERFLOW = Long.MIN_VALUE; // the sign bit, never used by the counters
 
-	@Nonnull private final int[] dependencies;
+	@Nonnull static final int[] DEPENDENCY_ZERO = new int[TYPES];
+	@Nonnull static final DependencyMap ZERO = new DependencyMap(0L, null);
 
-	DependencyMap(@Nonnull int[] dependencies) {
-		assert dependencies.length == DependencyType.values.size();
-		this.dependencies = dependencies;
+	private final long packed;
+	@Nullable private final int[] overflow;
+
+	private DependencyMap(long packed, @Nullable int[] overflow) {
+		assert (packed == PACKED_OVERFLOW) == (overflow != null);
+		this.packed = packed;
+		this.overflow = overflow;
 	}
 
-	public int getCount(@Nonnull DependencyType type) {
-		return dependencies[type.ordinal()];
+	/**
+	 * Pack the counts into a {@code long}.
+	 *
+	 * @param counts the counts, one per dependency type
+	 * @return the packed counts, or {@link #PACKED_OVERFLOW} if any count does not fit
+	 */
+	static long pack(@Nonnull int[] counts) {
+		assert counts.length == TYPES;
+		long packed = 0L;
+		for (int type = 0; type < TYPES; type++) {
+			final int count = counts[type];
+			if (count < 0 || count > COUNT_MASK) return PACKED_OVERFLOW;
+			packed |= (long) count << (type * COUNT_BITS);
+		}
+		return packed;
+	}
+
+	static int unpack(long packed, int type) {
+		assert packed != PACKED_OVERFLOW;
+		return (int) (packed >>> (type * COUNT_BITS) & COUNT_MASK);
 	}
 
 	@Nonnull
-	int[] getDependencies() {
-		return dependencies;
+	static DependencyMap of(@Nonnull int[] counts) {
+		final long packed = pack(counts);
+		return packed == 0L ? ZERO
+				: new DependencyMap(packed, packed == PACKED_OVERFLOW ? counts.clone() : null);
 	}
 
 	@Nonnull
-	DependencyMap identity() {
-		return this;
+	static DependencyMap of(long packed, @Nullable int[] overflow) {
+		return packed == 0L ? ZERO : new DependencyMap(packed, overflow);
+	}
+
+	@Nonnull
+	static DependencyMap read(@Nonnull ObjectInput input) throws IOException {
+		final long packed = input.readLong();
+		if (packed != PACKED_OVERFLOW) return of(packed, null);
+		final int[] counts = new int[TYPES];
+		for (int type = 0; type < TYPES; type++) counts[type] = input.readInt();
+		return new DependencyMap(PACKED_OVERFLOW, counts);
+	}
+
+	void write(@Nonnull ObjectOutput output) throws IOException {
+		output.writeLong(packed);
+		if (overflow != null) for (final int count : overflow) output.writeInt(count);
+	}
+
+	public int getCount(@Nonnull DependencyType type) {
+		return overflow != null ? overflow[type.ordinal()] : unpack(packed, type.ordinal());
+	}
+
+	/**
+	 * A fingerprint of the counts, the same for equal maps, see {@link Fingerprint}.
+	 *
+	 * @return the fingerprint
+	 */
+	long fingerprint() {
+		if (overflow == null) return packed;
+		long result = PACKED_OVERFLOW;
+		for (final int count : overflow) result = Fingerprint.combine(result, count);
+		return result;
+	}
+
+	@Nonnull
+	int[] toCounts() {
+		if (overflow != null) return overflow.clone();
+		final int[] counts = new int[TYPES];
+		for (int type = 0; type < TYPES; type++) counts[type] = unpack(packed, type);
+		return counts;
 	}
 
 	@Override
 	public boolean equals(@Nullable Object object) {
-		return this == object || object instanceof DependencyMap
-				&& Arrays.equals(dependencies, ((DependencyMap) object).dependencies);
+		if (this == object) return true;
+		if (!(object instanceof DependencyMap)) return false;
+		final DependencyMap map = (DependencyMap) object;
+		return packed == map.packed && Arrays.equals(overflow, map.overflow);
 	}
 
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(dependencies);
+		return overflow != null ? Arrays.hashCode(overflow) : Long.hashCode(packed);
+	}
+
+	@Nonnull
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder().append('{');
+		for (final DependencyType type : DependencyType.values) {
+			final int typeCount = getCount(type);
+			if (typeCount != 0) {
+				builder.append(builder.length() > 1 ? ", \"" : " \"").append(type).append("\": ").append(typeCount);
+			}
+		}
+		if (builder.length() > 1) builder.append(' ');
+		return builder.append('}').toString();
 	}
 }
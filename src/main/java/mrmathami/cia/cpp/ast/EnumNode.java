@@ -10,7 +10,7 @@ import java.io.ObjectOutput;
 import java.util.List;
 
 public final class EnumNode extends CppNode implements ITypeContainer, IVariableContainer, ITypedefContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nullable private CppNode type;
 
@@ -59,9 +59,9 @@ public final class EnumNode extends CppNode implements ITypeContainer, IVariable
 	}
 
 	@Override
-	protected int prototypeSimilarHashcode(@Nonnull Matcher matcher) {
-		int result = super.prototypeSimilarHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.SIMILAR);
+	protected long prototypeSimilarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.prototypeSimilarFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.SIMILAR));
 		return result;
 	}
 
@@ -72,9 +72,9 @@ public final class EnumNode extends CppNode implements ITypeContainer, IVariable
 	}
 
 	@Override
-	protected int prototypeIdenticalHashcode(@Nonnull Matcher matcher) {
-		int result = super.prototypeIdenticalHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.SIMILAR);
+	protected long prototypeIdenticalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.prototypeIdenticalFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.SIMILAR));
 		return result;
 	}
 
@@ -85,9 +85,9 @@ public final class EnumNode extends CppNode implements ITypeContainer, IVariable
 	}
 
 	@Override
-	protected int similarHashcode(@Nonnull Matcher matcher) {
-		int result = super.similarHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.SIMILAR);
+	protected long similarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.similarFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.SIMILAR));
 		return result;
 	}
 
@@ -98,9 +98,9 @@ public final class EnumNode extends CppNode implements ITypeContainer, IVariable
 	}
 
 	@Override
-	protected int identicalHashcode(@Nonnull Matcher matcher) {
-		int result = super.identicalHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.SIMILAR);
+	protected long identicalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.identicalFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.SIMILAR));
 		return result;
 	}
 
@@ -0,0 +1,80 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Nonnull;
+
+/**
+ * Helpers of the 64-bit node fingerprints computed by the match level hashers. Unlike {@link Object#hashCode()},
+ * fingerprints only depend on the content of the nodes, so they are the same across runs.
+ */
+public final class Fingerprint {
+	/**
+	 * Version of the fingerprint algorithm, including the match level hashers of the nodes. Must be changed whenever
+	 * any of them changes, as fingerprints are stored with locked trees.
+	 */
+	static final int VERSION = 2;
+
+	private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	@Nonnull private static final ClassValue<Long> CLASS_FINGERPRINTS = new ClassValue<>() {
+		@Nonnull
+		@Override
+		protected Long computeValue(@Nonnull Class<?> type) {
+			return of(type.getName());
+		}
+	};
+
+	private Fingerprint() {
+	}
+
+	static long of(@Nonnull String string) {
+		// FNV-1a, then the murmur3 finalizer to spread the low bits
+		return mix(hash(string));
+	}
+
+	/**
+	 * Hash a string with FNV-1a over its UTF-16 code units. The low bits of the result are weak, see
+	 * {@link #mix(long)}.
+	 *
+	 * @param string the string
+	 * @return the hash
+	 */
+	public static long hash(@Nonnull String string) {
+		long hash = FNV_OFFSET;
+		for (int index = 0; index < string.length(); index++) {
+			hash = (hash ^ string.charAt(index)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Spread the bits of a value with the murmur3 finalizer, every bit of the value changes half of the result bits.
+	 *
+	 * @param value the value
+	 * @return the mixed value
+	 */
+	public static long mix(long value) {
+		long hash = value;
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	static long of(@Nonnull Class<?> type) {
+		return CLASS_FINGERPRINTS.get(type);
+	}
+
+	/**
+	 * Mix a value into a fingerprint, the same way xxHash64 merges its accumulators.
+	 *
+	 * @param result the fingerprint so far
+	 * @param value the value to mix in
+	 * @return the new fingerprint
+	 */
+	static long combine(long result, long value) {
+		final long round = Long.rotateLeft(value * PRIME_2, 31) * PRIME_1;
+		return (result ^ round) * PRIME_1 + PRIME_2;
+	}
+}
@@ -12,14 +12,13 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.Map;
 import java.util.Objects;
 
 public final class FunctionNode extends CppNode implements IBodyContainer, ITypeContainer, IClassContainer, IEnumContainer, IVariableContainer, ITypedefContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nonnull private transient List<CppNode> parameters = new LinkedList<>();
-	@Nullable private String body;
+	@Nullable private Body body;
 	@Nullable private CppNode type;
 
 	public FunctionNode() {
@@ -66,6 +65,11 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	@Nullable
 	@Override
 	public String getBody() {
+		return body != null ? body.getText() : null;
+	}
+
+	@Nullable
+	Body internalGetBody() {
 		return body;
 	}
 
@@ -73,7 +77,7 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	@Override
 	public void setBody(@Nullable String body) {
 		checkReadOnly();
-		this.body = body;
+		this.body = Body.ofNullable(body);
 	}
 
 	@Nullable
@@ -132,9 +136,9 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	}
 
 	@Override
-	protected int prototypeSimilarHashcode(@Nonnull Matcher matcher) {
-		int result = super.prototypeSimilarHashcode(matcher);
-		result = 31 * result + parameters.size(); // prototype similar
+	protected long prototypeSimilarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.prototypeSimilarFingerprint(matcher);
+		result = Fingerprint.combine(result, parameters.size()); // prototype similar
 		return result;
 	}
 
@@ -145,9 +149,9 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	}
 
 	@Override
-	protected int prototypeIdenticalHashcode(@Nonnull Matcher matcher) {
-		int result = super.prototypeIdenticalHashcode(matcher);
-		result = 31 * result + parameters.size(); // prototype similar
+	protected long prototypeIdenticalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.prototypeIdenticalFingerprint(matcher);
+		result = Fingerprint.combine(result, parameters.size()); // prototype similar
 		return result;
 	}
 
@@ -158,10 +162,10 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	}
 
 	@Override
-	protected int similarHashcode(@Nonnull Matcher matcher) {
-		int result = super.similarHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.PROTOTYPE_IDENTICAL);
-		result = 31 * result + parameters.size(); // prototype identical
+	protected long similarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.similarFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.PROTOTYPE_IDENTICAL));
+		result = Fingerprint.combine(result, parameters.size()); // prototype identical
 		return result;
 	}
 
@@ -175,11 +179,11 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	}
 
 	@Override
-	protected int identicalHashcode(@Nonnull Matcher matcher) {
-		int result = super.identicalHashcode(matcher);
-		result = 31 * result + (body != null ? body.hashCode() : 0);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.PROTOTYPE_IDENTICAL);
-		result = 31 * result + parameters.size(); // prototype identical
+	protected long identicalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.identicalFingerprint(matcher);
+		result = Fingerprint.combine(result, body != null ? body.fingerprint() : 0L);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.PROTOTYPE_IDENTICAL));
+		result = Fingerprint.combine(result, parameters.size()); // prototype identical
 		return result;
 	}
 
@@ -188,9 +192,9 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	//region TreeNode
 
 	@Override
-	void internalLock(@Nonnull Map<String, String> stringPool, @Nonnull Map<DependencyMap, DependencyMap> countsPool) {
-		super.internalLock(stringPool, countsPool);
-		if (body != null) this.body = stringPool.computeIfAbsent(body, String::toString);
+	void internalLock(@Nonnull SymbolTable symbolTable, @Nonnull BodyStorage bodyStorage) {
+		super.internalLock(symbolTable, bodyStorage);
+		if (body != null) this.body = symbolTable.intern(body, bodyStorage);
 		this.parameters = List.copyOf(parameters);
 	}
 
@@ -217,9 +221,10 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 				.append(", \"type\": ").append(type)
 				.append(", \"parameters\": ").append(Utilities.collectionToString(parameters))
 				.append(", \"body\": ");
-		if (body != null) {
+		final String bodyText = getBody();
+		if (bodyText != null) {
 			builder.append("\"");
-			escapeBody(builder, body);
+			escapeBody(builder, bodyText);
 			builder.append("\"");
 		} else {
 			builder.append("null");
@@ -246,7 +251,7 @@ public final class FunctionNode extends CppNode implements IBodyContainer, IType
 	void read(@Nonnull ObjectInput input) throws IOException, ClassNotFoundException {
 		super.read(input);
 
-		this.body = castNullable(input.readObject(), String.class);
+		this.body = castNullable(input.readObject(), Body.class);
 		this.type = castNullable(input.readObject(), CppNode.class);
 
 		final int parametersSize = input.readInt();
@@ -0,0 +1,20 @@
+package mrmathami.cia.cpp.ast;
+
+/**
+ * Where the arrays of the {@link DependencyGraph} of a locked tree are kept. Only the edge storage is affected: the
+ * nodes, their names and the node table always stay in the Java heap.
+ */
+public enum GraphStorage {
+	/**
+	 * Keep the graph in the Java heap.
+	 */
+	HEAP,
+	/**
+	 * Keep the edge arrays of the graph in direct buffers outside of the Java heap, so the edges do not add to the
+	 * garbage collection work of very large trees. The rest of the tree still does, so the heap use of a tree shrinks
+	 * by the size of its edges, it does not stop growing with the tree. Access is slightly slower than {@link #HEAP}.
+	 * Each array is kept in one buffer, so a graph with more than {@code Integer.MAX_VALUE / Long.BYTES} dependencies
+	 * cannot use this storage.
+	 */
+	DIRECT
+}
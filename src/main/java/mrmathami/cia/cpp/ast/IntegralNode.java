@@ -3,7 +3,7 @@ package mrmathami.cia.cpp.ast;
 import mrmathami.annotations.Nonnull;
 
 public final class IntegralNode extends CppNode {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	public IntegralNode() {
 	}
@@ -0,0 +1,82 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Nonnull;
+
+/**
+ * Open addressing hash map from non-zero {@code long} keys to {@code byte} values, with linear probing. A zero value
+ * means the key is absent, so an entry is removed by putting zero. Used by {@link CppNode.Matcher} to cache match
+ * results of node pairs without allocating a key object per lookup.
+ */
+final class LongByteMap {
+	private static final int INITIAL_CAPACITY = 256;
+
+	@Nonnull private long[] keys = new long[INITIAL_CAPACITY];
+	@Nonnull private byte[] values = new byte[INITIAL_CAPACITY];
+	private int slotCount; // used slots, including the ones with zero value
+
+	private static int hash(long key) {
+		// murmur3 finalizer
+		long hash = key;
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return (int) (hash ^ (hash >>> 33));
+	}
+
+	private static int slotOf(@Nonnull long[] keys, long key) {
+		final int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0L && keys[slot] != key) slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	byte get(long key) {
+		assert key != 0L;
+		final int slot = slotOf(keys, key);
+		return keys[slot] == key ? values[slot] : 0;
+	}
+
+	/**
+	 * @param key the key, not zero
+	 * @param value the new value, zero to remove
+	 * @return the old value, zero if absent
+	 */
+	byte put(long key, byte value) {
+		assert key != 0L;
+		int slot = slotOf(keys, key);
+		if (keys[slot] == key) {
+			final byte oldValue = values[slot];
+			values[slot] = value;
+			return oldValue;
+		}
+		if (value == 0) return 0;
+		if ((slotCount + 1) * 4 > keys.length * 3) {
+			grow();
+			slot = slotOf(keys, key);
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		slotCount += 1;
+		return 0;
+	}
+
+	// removed entries are dropped while rehashing
+	private void grow() {
+		final long[] oldKeys = keys;
+		final byte[] oldValues = values;
+		int count = 0;
+		for (final byte value : oldValues) if (value != 0) count += 1;
+		int capacity = oldKeys.length;
+		while ((count + 1) * 2 > capacity) capacity *= 2;
+		final long[] newKeys = new long[capacity];
+		final byte[] newValues = new byte[capacity];
+		for (int index = 0; index < oldKeys.length; index++) {
+			if (oldValues[index] == 0) continue;
+			final int slot = slotOf(newKeys, oldKeys[index]);
+			newKeys[slot] = oldKeys[index];
+			newValues[slot] = oldValues[index];
+		}
+		this.keys = newKeys;
+		this.values = newValues;
+		this.slotCount = count;
+	}
+}
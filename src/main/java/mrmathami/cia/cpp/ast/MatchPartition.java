@@ -0,0 +1,643 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Internal;
+import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
+import mrmathami.cia.cpp.ast.CppNode.MatchLevel;
+import mrmathami.utils.IntsWrapper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Match equivalence classes of the nodes of two locked trees, at every match level. Two nodes match at a level if and
+ * only if they are in the same class at that level, the same answer {@link CppNode.Matcher} gives.
+ * <p>
+ * The classes are computed by partition refinement: every level starts with the nodes grouped by their own content
+ * (kind, names, signature, body), then a class is split whenever its nodes refer to nodes of different classes (parent,
+ * type, parameters, bases and dependency targets, at the levels the matchers compare them), until no class splits.
+ * Cyclic references are fine, the result is the greatest fixed point, the same as the theories of the matcher. Only
+ * the nodes that refer to a node moved to a new class are checked again, and a node moves O(log n) times per level at
+ * most, so the refinement takes O(r * s * log n) for r references and signatures of length s at most.
+ */
+public final class MatchPartition {
+	private static final int LEVEL_COUNT = MatchLevel.values.length;
+	private static final int PROTOTYPE_SIMILAR = MatchLevel.PROTOTYPE_SIMILAR.ordinal();
+	private static final int PROTOTYPE_IDENTICAL = MatchLevel.PROTOTYPE_IDENTICAL.ordinal();
+	private static final int SIMILAR = MatchLevel.SIMILAR.ordinal();
+	private static final int IDENTICAL = MatchLevel.IDENTICAL.ordinal();
+
+	private static final int KIND_CLASS = NodeTable.KINDS.indexOf(ClassNode.class);
+	private static final int KIND_ENUM = NodeTable.KINDS.indexOf(EnumNode.class);
+	private static final int KIND_FUNCTION = NodeTable.KINDS.indexOf(FunctionNode.class);
+	private static final int KIND_VARIABLE = NodeTable.KINDS.indexOf(VariableNode.class);
+	private static final int KIND_TYPEDEF = NodeTable.KINDS.indexOf(TypedefNode.class);
+
+	@Nonnull private final RootNode rootNodeA;
+	@Nonnull private final RootNode rootNodeB;
+	@Nullable private final Scope scope; // null if every node of both trees is in the partition
+	private final int nodeCountA;
+	@Nonnull private final int[][] classes; // [level][index], indices of version A nodes come first
+
+	// node columns, references are node indices, -1 if null
+	@Nonnull private final int[] kinds;
+	@Nonnull private final int[] parents;
+	@Nonnull private final int[] types;
+	@Nonnull private final int[] listOffsets; // parameters of functions, bases of classes
+	@Nonnull private final int[] lists;
+	@Nonnull private final int[] dependencyOffsets;
+	@Nonnull private final int[] dependencyTargets;
+	@Nonnull private final int[] dependencyCounts; // ids of the dependency maps
+	@Nonnull private final int[] referrerOffsets; // the nodes referring to each node
+	@Nonnull private final int[] referrers;
+
+	private MatchPartition(@Nonnull RootNode rootNodeA, @Nonnull RootNode rootNodeB, @Nullable Scope scope) {
+		this.rootNodeA = rootNodeA;
+		this.rootNodeB = rootNodeB;
+		this.scope = scope;
+		final NodeTable tableA = rootNodeA.getNodeTable();
+		final NodeTable tableB = rootNodeB.getNodeTable();
+		this.nodeCountA = scope != null ? scope.nodeCountA : tableA.getNodeCount();
+		final int nodeCount = scope != null ? scope.nodeIds.length : nodeCountA + tableB.getNodeCount();
+
+		this.kinds = new int[nodeCount];
+		this.parents = new int[nodeCount];
+		this.types = new int[nodeCount];
+		this.listOffsets = new int[nodeCount + 1];
+		this.dependencyOffsets = new int[nodeCount + 1];
+		this.classes = new int[LEVEL_COUNT][nodeCount];
+
+		// count the lists and the dependencies, the frozen nodes have none
+		final DependencyGraph graphA = rootNodeA.getDependencyGraph();
+		final DependencyGraph graphB = rootNodeB.getDependencyGraph();
+		int listCount = 0;
+		int dependencyCount = 0;
+		for (int index = 0; index < nodeCount; index++) {
+			listOffsets[index] = listCount;
+			if (isFrozen(index)) continue;
+			final CppNode node = getNode(index);
+			if (node instanceof FunctionNode) {
+				listCount += ((FunctionNode) node).getParameters().size();
+			} else if (node instanceof ClassNode) {
+				listCount += ((ClassNode) node).getBases().size();
+			}
+			final DependencyGraph graph = index < nodeCountA ? graphA : graphB;
+			final int id = nodeIdOf(index);
+			dependencyCount += graph.getDependencyToEnd(id) - graph.getDependencyToStart(id);
+		}
+		listOffsets[nodeCount] = listCount;
+		this.lists = new int[listCount];
+		this.dependencyTargets = new int[dependencyCount];
+		this.dependencyCounts = new int[dependencyCount];
+
+		// fill the columns, and seed the classes with the content of the nodes
+		final Map<String, Integer> stringIds = new HashMap<>();
+		final int[] stringsA = createStrings(tableA);
+		final int[] stringsB = createStrings(tableB);
+		final Map<Body, Integer> bodyIds = new HashMap<>();
+		final Map<DependencyMap, Integer> countsIds = new HashMap<>();
+		final long[] fingerprintsA = rootNodeA.internalGetFingerprints();
+		final long[] fingerprintsB = rootNodeB.internalGetFingerprints();
+		final Map<IntsWrapper, Integer>[] seedMaps = createMaps();
+		int dependencyIndex = 0;
+		for (int index = 0; index < nodeCount; index++) {
+			final boolean versionA = index < nodeCountA;
+			final int id = nodeIdOf(index);
+			final NodeTable table = versionA ? tableA : tableB;
+			final DependencyGraph graph = versionA ? graphA : graphB;
+			final int[] strings = versionA ? stringsA : stringsB;
+			final CppNode node = table.getNode(id);
+
+			final int kind = NodeTable.KINDS.indexOf(table.getNodeClass(id));
+			kinds[index] = kind;
+			dependencyOffsets[index] = dependencyIndex;
+			if (isFrozen(index)) {
+				// a frozen node and its counterpart match at every level, and never split as they refer to nothing
+				assert scope != null;
+				parents[index] = -1;
+				types[index] = -1;
+				final IntsWrapper seed = IntsWrapper.of(-1, versionA ? id : scope.counterparts[id]);
+				for (int level = 0; level < LEVEL_COUNT; level++) classes[level][index] = idOf(seedMaps[level], seed);
+				continue;
+			}
+			final int parentId = table.getParentId(id);
+			parents[index] = parentId >= 0 ? indexOfId(versionA, parentId) : -1;
+			types[index] = node instanceof ITypeContainer ? indexOf(((ITypeContainer) node).getType()) : -1;
+			if (node instanceof FunctionNode) {
+				fillList(index, ((FunctionNode) node).getParameters());
+			} else if (node instanceof ClassNode) {
+				fillList(index, ((ClassNode) node).getBases());
+			}
+			for (int edge = graph.getDependencyToStart(id); edge < graph.getDependencyToEnd(id); edge++) {
+				dependencyTargets[dependencyIndex] = indexOfId(versionA, graph.getDependencyToId(edge));
+				dependencyCounts[dependencyIndex] = idOf(countsIds, graph.getDependencyToCounts(edge));
+				dependencyIndex += 1;
+			}
+
+			final int name = stringIdOf(table, strings, stringIds, table.getNameIndex(id));
+			final int uniqueName = stringIdOf(table, strings, stringIds, table.getUniqueNameIndex(id));
+			final int signature = stringIdOf(table, strings, stringIds, table.getSignatureIndex(id));
+			final Body body = node instanceof FunctionNode ? ((FunctionNode) node).internalGetBody()
+					: node instanceof VariableNode ? ((VariableNode) node).internalGetBody() : null;
+			// like the matcher, nodes with different identical fingerprints are never identical
+			final long fingerprint = (versionA ? fingerprintsA : fingerprintsB)
+					[CppNode.Matcher.fingerprintIndex(id, MatchLevel.IDENTICAL)];
+			classes[PROTOTYPE_SIMILAR][index] = idOf(seedMaps[PROTOTYPE_SIMILAR], IntsWrapper.of(kind));
+			classes[PROTOTYPE_IDENTICAL][index]
+					= idOf(seedMaps[PROTOTYPE_IDENTICAL], IntsWrapper.of(kind, name, signature));
+			classes[SIMILAR][index] = idOf(seedMaps[SIMILAR], IntsWrapper.of(kind, name, uniqueName, signature));
+			classes[IDENTICAL][index] = idOf(seedMaps[IDENTICAL], IntsWrapper.of(kind, name, uniqueName, signature,
+					body != null ? idOf(bodyIds, body) : -1, (int) (fingerprint >>> Integer.SIZE), (int) fingerprint));
+		}
+		dependencyOffsets[nodeCount] = dependencyIndex;
+
+		// the nodes referring to each node, to find the classes to check again after a split
+		this.referrerOffsets = new int[nodeCount + 1];
+		for (int index = 0; index < nodeCount; index++) {
+			forEachReference(index, (referrer, node) -> referrerOffsets[node] += 1);
+		}
+		for (int index = 0, offset = 0; index <= nodeCount; index++) {
+			final int count = referrerOffsets[index];
+			referrerOffsets[index] = offset;
+			offset += count;
+		}
+		this.referrers = new int[referrerOffsets[nodeCount]];
+		final int[] referrerEnds = Arrays.copyOf(referrerOffsets, nodeCount);
+		for (int index = 0; index < nodeCount; index++) {
+			forEachReference(index, (referrer, node) -> referrers[referrerEnds[node]++] = referrer);
+		}
+
+		refine();
+	}
+
+	/**
+	 * Compute the match classes of the nodes of two locked trees.
+	 *
+	 * @param rootNodeA the root node of the first tree
+	 * @param rootNodeB the root node of the second tree
+	 * @return the partition
+	 * @throws UnsupportedOperationException if one of the trees is not locked
+	 */
+	@Nonnull
+	public static MatchPartition of(@Nonnull RootNode rootNodeA, @Nonnull RootNode rootNodeB) {
+		return new MatchPartition(rootNodeA, rootNodeB, null);
+	}
+
+	/**
+	 * Compute the match classes of the nodes in a scope of two locked trees. The nodes out of the scopes are frozen:
+	 * they are taken as matching their counterparts at every level without being compared, and only the ones the nodes
+	 * in the scopes refer to are in the partition. The cost depends on the size of the scopes, not of the trees, and
+	 * the classes are the same as the classes of {@link #of(RootNode, RootNode)} if the frozen nodes do match their
+	 * counterparts.
+	 *
+	 * @param rootNodeA the root node of the first tree
+	 * @param rootNodeB the root node of the second tree
+	 * @param scopeA the ids of the nodes of the first tree in the scope
+	 * @param scopeB the ids of the nodes of the second tree in the scope
+	 * @param counterparts the id of the counterpart in the first tree of each node of the second tree, -1 if none
+	 * @return the partition, of the nodes in the scopes and the frozen nodes they refer to
+	 * @throws UnsupportedOperationException if one of the trees is not locked
+	 * @throws IllegalArgumentException if a node of the second tree out of its scope has no counterpart
+	 */
+	@Internal
+	@Nonnull
+	public static MatchPartition of(@Nonnull RootNode rootNodeA, @Nonnull RootNode rootNodeB, @Nonnull BitSet scopeA,
+			@Nonnull BitSet scopeB, @Nonnull int[] counterparts) {
+		final int nodeCountB = rootNodeB.getNodeTable().getNodeCount();
+		if (counterparts.length != nodeCountB) {
+			throw new IllegalArgumentException("Counterparts do not cover the nodes of the second tree!");
+		}
+		for (int id = scopeB.nextClearBit(0); id < nodeCountB; id = scopeB.nextClearBit(id + 1)) {
+			if (counterparts[id] < 0) throw new IllegalArgumentException("Frozen node has no counterpart!");
+		}
+		final BitSet selectedA = select(rootNodeA, scopeA);
+		final BitSet selectedB = select(rootNodeB, scopeB);
+		final int nodeCountA = selectedA.cardinality();
+		final int[] nodeIds = new int[nodeCountA + selectedB.cardinality()];
+		final int[] indicesA = indicesOf(selectedA, rootNodeA.getNodeTable().getNodeCount(), nodeIds, 0);
+		final int[] indicesB = indicesOf(selectedB, nodeCountB, nodeIds, nodeCountA);
+		return new MatchPartition(rootNodeA, rootNodeB,
+				new Scope(scopeA, scopeB, counterparts, nodeIds, nodeCountA, indicesA, indicesB));
+	}
+
+	/**
+	 * The nodes in a scope and the nodes they refer to.
+	 */
+	@Nonnull
+	private static BitSet select(@Nonnull RootNode rootNode, @Nonnull BitSet scope) {
+		final NodeTable table = rootNode.getNodeTable();
+		final DependencyGraph graph = rootNode.getDependencyGraph();
+		final BitSet selected = (BitSet) scope.clone();
+		for (int id = scope.nextSetBit(0); id >= 0; id = scope.nextSetBit(id + 1)) {
+			final int parentId = table.getParentId(id);
+			if (parentId >= 0) selected.set(parentId);
+			final CppNode node = table.getNode(id);
+			if (node instanceof ITypeContainer) {
+				final CppNode type = ((ITypeContainer) node).getType();
+				if (type != null) selected.set(type.getId());
+			}
+			if (node instanceof FunctionNode) {
+				for (final CppNode parameter : ((FunctionNode) node).getParameters()) selected.set(parameter.getId());
+			} else if (node instanceof ClassNode) {
+				for (final CppNode base : ((ClassNode) node).getBases()) selected.set(base.getId());
+			}
+			for (int edge = graph.getDependencyToStart(id); edge < graph.getDependencyToEnd(id); edge++) {
+				selected.set(graph.getDependencyToId(edge));
+			}
+		}
+		return selected;
+	}
+
+	@Nonnull
+	private static int[] indicesOf(@Nonnull BitSet selected, int nodeCount, @Nonnull int[] nodeIds, int offset) {
+		final int[] indices = new int[nodeCount];
+		Arrays.fill(indices, -1);
+		int index = offset;
+		for (int id = selected.nextSetBit(0); id >= 0; id = selected.nextSetBit(id + 1)) {
+			indices[id] = index;
+			nodeIds[index++] = id;
+		}
+		return indices;
+	}
+
+	@Nonnull
+	private static int[] createStrings(@Nonnull NodeTable table) {
+		final int[] strings = new int[table.getStringCount()];
+		Arrays.fill(strings, -1);
+		return strings;
+	}
+
+	private static int stringIdOf(@Nonnull NodeTable table, @Nonnull int[] strings,
+			@Nonnull Map<String, Integer> stringIds, int stringIndex) {
+		if (strings[stringIndex] < 0) strings[stringIndex] = idOf(stringIds, table.getString(stringIndex));
+		return strings[stringIndex];
+	}
+
+	private static <E> int idOf(@Nonnull Map<E, Integer> ids, @Nonnull E key) {
+		final Integer id = ids.putIfAbsent(key, ids.size());
+		return id != null ? id : ids.size() - 1;
+	}
+
+	@Nonnull
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static Map<IntsWrapper, Integer>[] createMaps() {
+		final Map<IntsWrapper, Integer>[] maps = new Map[LEVEL_COUNT];
+		for (int level = 0; level < LEVEL_COUNT; level++) maps[level] = new HashMap<>();
+		return maps;
+	}
+
+	private void fillList(int index, @Nonnull Collection<? extends CppNode> nodes) {
+		int listIndex = listOffsets[index];
+		for (final CppNode node : nodes) lists[listIndex++] = indexOf(node);
+	}
+
+	private void forEachReference(int index, @Nonnull ReferenceConsumer consumer) {
+		if (parents[index] >= 0) consumer.accept(index, parents[index]);
+		if (types[index] >= 0) consumer.accept(index, types[index]);
+		for (int listIndex = listOffsets[index]; listIndex < listOffsets[index + 1]; listIndex++) {
+			consumer.accept(index, lists[listIndex]);
+		}
+		for (int edge = dependencyOffsets[index]; edge < dependencyOffsets[index + 1]; edge++) {
+			consumer.accept(index, dependencyTargets[edge]);
+		}
+	}
+
+	//region Refinement
+
+	private void refine() {
+		new Refinement().run();
+	}
+
+	/**
+	 * The state of the refinement. The nodes of every level are kept ordered by class, so each class is a range of the
+	 * member array and is split in place. The members of a class that refer to a node moved to a new class since the
+	 * class was last checked are touched, and kept at the start of the range. Only the touched members are checked
+	 * again, against one untouched member that stands for the rest of the class.
+	 * <p>
+	 * The largest part of a split class keeps the class id, and only the nodes of the other parts move. A node moves to
+	 * a class at most half the size of its old one, so at most log2(n) times per level, and every move touches the
+	 * nodes referring to it. The total cost is O(r * s * log n), with r the number of references and s the length of
+	 * the longest signature, whatever the shape and the length of the dependency chains.
+	 */
+	private final class Refinement {
+		@Nonnull private final int[][] members; // [level][position], the nodes ordered by class
+		@Nonnull private final int[][] positions; // [level][index]
+		@Nonnull private final int[][] classStarts; // [level][class]
+		@Nonnull private final int[][] classEnds; // [level][class]
+		@Nonnull private final int[][] touchedCounts; // [level][class], the touched members start the range
+		@Nonnull private final boolean[][] touched; // [level][index]
+		@Nonnull private final int[][] dirtyClasses; // [level][], stack of the classes with touched members
+		@Nonnull private final int[] dirtyCounts = new int[LEVEL_COUNT];
+		@Nonnull private final int[] classCounts = new int[LEVEL_COUNT];
+
+		Refinement() {
+			final int nodeCount = kinds.length;
+			this.members = new int[LEVEL_COUNT][nodeCount];
+			this.positions = new int[LEVEL_COUNT][nodeCount];
+			this.classStarts = new int[LEVEL_COUNT][nodeCount];
+			this.classEnds = new int[LEVEL_COUNT][nodeCount];
+			this.touchedCounts = new int[LEVEL_COUNT][nodeCount];
+			this.touched = new boolean[LEVEL_COUNT][nodeCount];
+			this.dirtyClasses = new int[LEVEL_COUNT][nodeCount];
+			for (int level = 0; level < LEVEL_COUNT; level++) {
+				final int[] levelClasses = classes[level];
+				final int[] starts = classStarts[level];
+				final int[] ends = classEnds[level];
+				int classCount = 0;
+				for (final int classId : levelClasses) {
+					classCount = Math.max(classCount, classId + 1);
+					ends[classId] += 1;
+				}
+				classCounts[level] = classCount;
+				for (int classId = 0, offset = 0; classId < classCount; classId++) {
+					starts[classId] = offset;
+					offset += ends[classId];
+					ends[classId] = starts[classId];
+				}
+				for (int index = 0; index < nodeCount; index++) {
+					final int position = ends[levelClasses[index]]++;
+					members[level][position] = index;
+					positions[level][index] = position;
+				}
+				// every node is checked at least once
+				for (int index = 0; index < nodeCount; index++) touch(level, index);
+			}
+		}
+
+		void run() {
+			boolean dirty = true;
+			while (dirty) {
+				dirty = false;
+				for (int level = 0; level < LEVEL_COUNT; level++) {
+					while (dirtyCounts[level] > 0) {
+						dirty = true;
+						split(level, dirtyClasses[level][--dirtyCounts[level]]);
+					}
+				}
+			}
+		}
+
+		private void touch(int level, int index) {
+			if (touched[level][index]) return;
+			touched[level][index] = true;
+			final int classId = classes[level][index];
+			final int touchedCount = touchedCounts[level][classId]++;
+			if (touchedCount == 0) dirtyClasses[level][dirtyCounts[level]++] = classId;
+
+			// swap the node to the end of the touched members of its class
+			final int[] levelMembers = members[level];
+			final int[] levelPositions = positions[level];
+			final int position = levelPositions[index];
+			final int target = classStarts[level][classId] + touchedCount;
+			final int other = levelMembers[target];
+			levelMembers[position] = other;
+			levelPositions[other] = position;
+			levelMembers[target] = index;
+			levelPositions[index] = target;
+		}
+
+		private void split(int level, int classId) {
+			final int[] levelMembers = members[level];
+			final int start = classStarts[level][classId];
+			final int end = classEnds[level][classId];
+			final int touchedEnd = start + touchedCounts[level][classId];
+			touchedCounts[level][classId] = 0;
+			for (int position = start; position < touchedEnd; position++) touched[level][levelMembers[position]] = false;
+
+			// group the touched members by signature. The untouched members still share the signature of the class,
+			// if there are any they are group 0.
+			final Map<IntsWrapper, Integer> groupIds = new HashMap<>();
+			int[] groupSizes = new int[4];
+			int groupCount = 0;
+			if (touchedEnd < end) {
+				groupIds.put(IntsWrapper.of(signature(levelMembers[touchedEnd], level)), groupCount);
+				groupSizes[groupCount++] = end - touchedEnd;
+			}
+			final int[] groups = new int[touchedEnd - start];
+			for (int position = start; position < touchedEnd; position++) {
+				final IntsWrapper key = IntsWrapper.of(signature(levelMembers[position], level));
+				final Integer groupId = groupIds.putIfAbsent(key, groupCount);
+				final int group = groupId != null ? groupId : groupCount++;
+				if (group == groupSizes.length) groupSizes = Arrays.copyOf(groupSizes, group * 2);
+				groupSizes[group] += 1;
+				groups[position - start] = group;
+			}
+			if (groupCount == 1) return;
+
+			// the largest group keeps the class id and the end of the range, the other groups take the start. If that
+			// is the untouched group, only the touched members are moved.
+			int keptGroup = 0;
+			for (int group = 1; group < groupCount; group++) {
+				if (groupSizes[group] > groupSizes[keptGroup]) keptGroup = group;
+			}
+			final int layoutEnd = keptGroup == 0 && touchedEnd < end ? touchedEnd : end;
+			final int[] groupStarts = new int[groupCount];
+			int keptStart = start;
+			for (int group = 0; group < groupCount; group++) {
+				if (group == keptGroup) continue;
+				groupStarts[group] = keptStart;
+				keptStart += groupSizes[group];
+			}
+			groupStarts[keptGroup] = keptStart;
+
+			final int[] layout = new int[layoutEnd - start];
+			final int[] groupEnds = groupStarts.clone();
+			for (int position = start; position < layoutEnd; position++) {
+				final int group = position < touchedEnd ? groups[position - start] : 0;
+				layout[groupEnds[group]++ - start] = levelMembers[position];
+			}
+			final int[] levelPositions = positions[level];
+			for (int position = start; position < layoutEnd; position++) {
+				final int index = layout[position - start];
+				levelMembers[position] = index;
+				levelPositions[index] = position;
+			}
+
+			// give the moved groups new classes, then touch the nodes referring to the moved nodes
+			final int[] levelClasses = classes[level];
+			for (int group = 0; group < groupCount; group++) {
+				if (group == keptGroup) continue;
+				final int newClassId = classCounts[level]++;
+				classStarts[level][newClassId] = groupStarts[group];
+				classEnds[level][newClassId] = groupStarts[group] + groupSizes[group];
+				for (int position = groupStarts[group]; position < classEnds[level][newClassId]; position++) {
+					levelClasses[levelMembers[position]] = newClassId;
+				}
+			}
+			classStarts[level][classId] = keptStart;
+			for (int position = start; position < keptStart; position++) {
+				final int index = levelMembers[position];
+				for (int offset = referrerOffsets[index]; offset < referrerOffsets[index + 1]; offset++) {
+					for (int referrerLevel = 0; referrerLevel < LEVEL_COUNT; referrerLevel++) {
+						touch(referrerLevel, referrers[offset]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The class of a node and the classes of the nodes it refers to, at the levels the matchers of the node compare
+	 * them. Two nodes of the same class with the same signature still match at this level.
+	 */
+	@Nonnull
+	private int[] signature(int index, int level) {
+		final int kind = kinds[index];
+		final int[] builder = new int[3 + listOffsets[index + 1] - listOffsets[index]
+				+ (level == IDENTICAL ? 1 + (dependencyOffsets[index + 1] - dependencyOffsets[index]) * 2 : 0)];
+		int size = 0;
+		builder[size++] = classes[level][index];
+		if (level == PROTOTYPE_SIMILAR || level == PROTOTYPE_IDENTICAL) {
+			if (kind == KIND_FUNCTION) size = appendList(builder, size, index, PROTOTYPE_SIMILAR, false);
+			if (kind == KIND_ENUM) builder[size++] = classOf(types[index], SIMILAR);
+			return Arrays.copyOf(builder, size);
+		}
+		builder[size++] = classOf(parents[index], SIMILAR);
+		if (level == SIMILAR) {
+			if (kind == KIND_CLASS) size = appendList(builder, size, index, PROTOTYPE_IDENTICAL, true);
+			if (kind == KIND_FUNCTION) size = appendList(builder, size, index, PROTOTYPE_IDENTICAL, false);
+			if (kind == KIND_VARIABLE || kind == KIND_TYPEDEF) {
+				builder[size++] = classOf(types[index], PROTOTYPE_IDENTICAL);
+			}
+			if (kind == KIND_ENUM) builder[size++] = classOf(types[index], SIMILAR);
+			return Arrays.copyOf(builder, size);
+		}
+		// the dependency targets are compared as a multiset of (prototype identical class, dependency counts)
+		final int start = dependencyOffsets[index];
+		final int end = dependencyOffsets[index + 1];
+		final long[] dependencies = new long[end - start];
+		for (int edge = start; edge < end; edge++) {
+			dependencies[edge - start] = (long) classes[PROTOTYPE_IDENTICAL][dependencyTargets[edge]] << Integer.SIZE
+					| dependencyCounts[edge];
+		}
+		Arrays.sort(dependencies);
+		builder[size++] = dependencies.length;
+		for (final long dependency : dependencies) {
+			builder[size++] = (int) (dependency >>> Integer.SIZE);
+			builder[size++] = (int) dependency;
+		}
+		if (kind == KIND_CLASS) size = appendList(builder, size, index, IDENTICAL, true);
+		if (kind == KIND_FUNCTION) size = appendList(builder, size, index, PROTOTYPE_IDENTICAL, false);
+		if (kind == KIND_FUNCTION || kind == KIND_VARIABLE || kind == KIND_TYPEDEF) {
+			builder[size++] = classOf(types[index], PROTOTYPE_IDENTICAL);
+		}
+		if (kind == KIND_ENUM) builder[size++] = classOf(types[index], IDENTICAL);
+		return Arrays.copyOf(builder, size);
+	}
+
+	private int appendList(@Nonnull int[] builder, int size, int index, int level, boolean unordered) {
+		final int start = listOffsets[index];
+		final int end = listOffsets[index + 1];
+		for (int listIndex = start; listIndex < end; listIndex++) {
+			builder[size + listIndex - start] = classOf(lists[listIndex], level);
+		}
+		if (unordered) Arrays.sort(builder, size, size + end - start);
+		return size + end - start;
+	}
+
+	private int classOf(int index, int level) {
+		return index >= 0 ? classes[level][index] : -1;
+	}
+
+	private interface ReferenceConsumer {
+		void accept(int referrer, int node);
+	}
+
+	//endregion Refinement
+
+	private int nodeIdOf(int index) {
+		return scope != null ? scope.nodeIds[index] : index < nodeCountA ? index : index - nodeCountA;
+	}
+
+	private boolean isFrozen(int index) {
+		return scope != null && !(index < nodeCountA ? scope.scopeA : scope.scopeB).get(scope.nodeIds[index]);
+	}
+
+	@Nonnull
+	private CppNode getNode(int index) {
+		return (index < nodeCountA ? rootNodeA : rootNodeB).getNodeTable().getNode(nodeIdOf(index));
+	}
+
+	private int indexOfId(boolean versionA, int id) {
+		if (scope != null) return (versionA ? scope.indicesA : scope.indicesB)[id];
+		return versionA ? id : id + nodeCountA;
+	}
+
+	private int indexOf(@Nullable CppNode node) {
+		if (node == null) return -1;
+		final CppNode root = node.getRoot();
+		if (root != rootNodeA && root != rootNodeB) {
+			throw new IllegalArgumentException("Node is not in the partitioned trees!");
+		}
+		final int index = indexOfId(root == rootNodeA, node.getId());
+		if (index < 0) throw new IllegalArgumentException("Node is not in the scope of the partition!");
+		return index;
+	}
+
+	/**
+	 * The nodes of a partition of some scopes of the trees, see
+	 * {@link #of(RootNode, RootNode, BitSet, BitSet, int[])}. The indices of the nodes follow their ids, version A
+	 * first.
+	 */
+	private static final class Scope {
+		@Nonnull private final BitSet scopeA;
+		@Nonnull private final BitSet scopeB;
+		@Nonnull private final int[] counterparts; // [id of version B]
+		@Nonnull private final int[] nodeIds; // [index]
+		private final int nodeCountA;
+		@Nonnull private final int[] indicesA; // [id], -1 if not in the partition
+		@Nonnull private final int[] indicesB; // [id], -1 if not in the partition
+
+		Scope(@Nonnull BitSet scopeA, @Nonnull BitSet scopeB, @Nonnull int[] counterparts, @Nonnull int[] nodeIds,
+				int nodeCountA, @Nonnull int[] indicesA, @Nonnull int[] indicesB) {
+			this.scopeA = scopeA;
+			this.scopeB = scopeB;
+			this.counterparts = counterparts;
+			this.nodeIds = nodeIds;
+			this.nodeCountA = nodeCountA;
+			this.indicesA = indicesA;
+			this.indicesB = indicesB;
+		}
+	}
+
+	@Nonnull
+	public RootNode getRootNodeA() {
+		return rootNodeA;
+	}
+
+	@Nonnull
+	public RootNode getRootNodeB() {
+		return rootNodeB;
+	}
+
+	/**
+	 * Get the match class of a node at a level.
+	 *
+	 * @param node a node of one of the trees
+	 * @param level the match level
+	 * @return the class id
+	 * @throws IllegalArgumentException if the node is not in one of the trees, or not in the partition
+	 */
+	public int getClassId(@Nonnull CppNode node, @Nonnull MatchLevel level) {
+		return classes[level.ordinal()][indexOf(node)];
+	}
+
+	/**
+	 * Check if two nodes match at a level, same as {@link CppNode.Matcher#isNodeMatch}.
+	 *
+	 * @param nodeA a node of one of the trees
+	 * @param nodeB a node of one of the trees
+	 * @param level the match level
+	 * @return true if the nodes match
+	 * @throws IllegalArgumentException if a node is not in one of the trees, or not in the partition
+	 */
+	public boolean isNodeMatch(@Nullable CppNode nodeA, @Nullable CppNode nodeB, @Nonnull MatchLevel level) {
+		if (nodeA == nodeB) return true;
+		if (nodeA == null || nodeB == null) return false;
+		final int[] levelClasses = classes[level.ordinal()];
+		return levelClasses[indexOf(nodeA)] == levelClasses[indexOf(nodeB)];
+	}
+}
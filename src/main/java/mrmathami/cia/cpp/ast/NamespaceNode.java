@@ -5,7 +5,7 @@ import mrmathami.annotations.Nonnull;
 import java.util.List;
 
 public final class NamespaceNode extends CppNode implements IClassContainer, IEnumContainer, IFunctionContainer, IVariableContainer, ITypedefContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	public NamespaceNode() {
 	}
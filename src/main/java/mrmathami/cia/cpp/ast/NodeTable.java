@@ -0,0 +1,249 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Nonnull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column table of the nodes of a locked tree. Every column is indexed by node id, which is dense from zero to node
+ * count. Names, unique names and signatures are kept once in a string table and referred to by index, and the children
+ * of node {@code id} are the ids from {@code getChildStart(id)} (inclusive) to {@code getChildEnd(id)} (exclusive), in
+ * the same order as {@link CppNode#getChildren()}. Ids are in preorder, so the subtree of node {@code id} is the id range
+ * from {@code id} (inclusive) to {@code getSubtreeEnd(id)} (exclusive). Bulk scans over the tree should use this table
+ * instead of walking the node objects.
+ */
+public final class NodeTable {
+	/**
+	 * Node kinds, the kind code of a node is the index of its class in this list.
+	 */
+	@Nonnull static final List<Class<? extends CppNode>> KINDS = List.of(IntegralNode.class, NamespaceNode.class,
+			ClassNode.class, EnumNode.class, FunctionNode.class, VariableNode.class, TypedefNode.class, RootNode.class);
+
+	@Nonnull private final CppNode[] nodes;
+	@Nonnull private final byte[] kinds;
+	@Nonnull private final int[] parentIds;
+	@Nonnull private final int[] childOffsets;
+	@Nonnull private final int[] childIds;
+	@Nonnull private final int[] subtreeEnds;
+
+	@Nonnull private final String[] strings;
+	@Nonnull private final int[] nameIndices;
+	@Nonnull private final int[] uniqueNameIndices;
+	@Nonnull private final int[] signatureIndices;
+
+	private NodeTable(@Nonnull CppNode[] nodes, @Nonnull byte[] kinds, @Nonnull int[] parentIds,
+			@Nonnull int[] childOffsets, @Nonnull int[] childIds, @Nonnull int[] subtreeEnds, @Nonnull String[] strings,
+			@Nonnull int[] nameIndices, @Nonnull int[] uniqueNameIndices, @Nonnull int[] signatureIndices) {
+		this.nodes = nodes;
+		this.kinds = kinds;
+		this.parentIds = parentIds;
+		this.childOffsets = childOffsets;
+		this.childIds = childIds;
+		this.subtreeEnds = subtreeEnds;
+		this.strings = strings;
+		this.nameIndices = nameIndices;
+		this.uniqueNameIndices = uniqueNameIndices;
+		this.signatureIndices = signatureIndices;
+	}
+
+	/**
+	 * Create the table from the nodes of a tree.
+	 *
+	 * @param rootNode the root node, with all node ids assigned in preorder
+	 * @return the table
+	 */
+	@Nonnull
+	static NodeTable build(@Nonnull RootNode rootNode) {
+		final int nodeCount = rootNode.getNodeCount();
+		final CppNode[] nodes = new CppNode[nodeCount];
+		putNode(nodes, rootNode);
+		for (final CppNode node : rootNode) putNode(nodes, node);
+		for (final CppNode node : nodes) {
+			if (node == null) throw new IllegalStateException("Node ids are not dense!");
+		}
+
+		final byte[] kinds = new byte[nodeCount];
+		final int[] parentIds = new int[nodeCount];
+		final int[] childOffsets = new int[nodeCount + 1];
+		final int[] childIds = new int[nodeCount - 1];
+		final Map<String, Integer> stringMap = new HashMap<>();
+		final List<String> strings = new ArrayList<>();
+		final int[] nameIndices = new int[nodeCount];
+		final int[] uniqueNameIndices = new int[nodeCount];
+		final int[] signatureIndices = new int[nodeCount];
+		int childIndex = 0;
+		for (int id = 0; id < nodeCount; id++) {
+			final CppNode node = nodes[id];
+			kinds[id] = (byte) kindOf(node.getClass());
+			final CppNode parent = node.getParent();
+			parentIds[id] = parent != null ? parent.getId() : -1;
+			for (final CppNode child : node.getChildren()) childIds[childIndex++] = child.getId();
+			childOffsets[id + 1] = childIndex;
+			nameIndices[id] = stringIndex(stringMap, strings, node.getName());
+			uniqueNameIndices[id] = stringIndex(stringMap, strings, node.getUniqueName());
+			signatureIndices[id] = stringIndex(stringMap, strings, node.getSignature());
+		}
+
+		// children have greater ids than their parent, and the subtree of the last child ends where its parent ends
+		final int[] subtreeEnds = new int[nodeCount];
+		for (int id = nodeCount - 1; id >= 0; id--) {
+			final int start = childOffsets[id];
+			final int end = childOffsets[id + 1];
+			int expectedId = id + 1;
+			for (int index = start; index < end; index++) {
+				final int childId = childIds[index];
+				if (childId != expectedId) throw new IllegalStateException("Node ids are not in preorder!");
+				expectedId = subtreeEnds[childId];
+			}
+			subtreeEnds[id] = expectedId;
+		}
+
+		return new NodeTable(nodes, kinds, parentIds, childOffsets, childIds, subtreeEnds,
+				strings.toArray(String[]::new), nameIndices, uniqueNameIndices, signatureIndices);
+	}
+
+	private static void putNode(@Nonnull CppNode[] nodes, @Nonnull CppNode node) {
+		final int id = node.getId();
+		if (id < 0 || id >= nodes.length || nodes[id] != null) {
+			throw new IllegalStateException("Node ids are not unique or not in range [0, nodeCount)!");
+		}
+		nodes[id] = node;
+	}
+
+	private static int stringIndex(@Nonnull Map<String, Integer> stringMap, @Nonnull List<String> strings,
+			@Nonnull String string) {
+		final Integer index = stringMap.putIfAbsent(string, strings.size());
+		if (index != null) return index;
+		strings.add(string);
+		return strings.size() - 1;
+	}
+
+	/**
+	 * Get the kind code of a node class.
+	 *
+	 * @param nodeClass the node class
+	 * @return the kind code, or -1 if the class is not a node kind
+	 */
+	static int kindOf(@Nonnull Class<?> nodeClass) {
+		return KINDS.indexOf(nodeClass);
+	}
+
+	@Nonnull
+	CppNode[] getNodes() {
+		return nodes;
+	}
+
+	boolean contains(@Nonnull CppNode node) {
+		final int id = node.getId();
+		return id >= 0 && id < nodes.length && nodes[id] == node;
+	}
+
+	//region Nodes
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	@Nonnull
+	public CppNode getNode(int id) {
+		return nodes[id];
+	}
+
+	@Nonnull
+	public Class<? extends CppNode> getNodeClass(int id) {
+		return KINDS.get(kinds[id]);
+	}
+
+	/**
+	 * Check the kind of a node without touching the node object.
+	 *
+	 * @param id the node id
+	 * @param nodeClass the node class
+	 * @return true if the node is of the class
+	 */
+	public boolean isNodeClass(int id, @Nonnull Class<? extends CppNode> nodeClass) {
+		return kinds[id] == kindOf(nodeClass);
+	}
+
+	/**
+	 * @param id the node id
+	 * @return the parent id, or -1 if the node is the root
+	 */
+	public int getParentId(int id) {
+		return parentIds[id];
+	}
+
+	public int getChildStart(int id) {
+		return childOffsets[id];
+	}
+
+	public int getChildEnd(int id) {
+		return childOffsets[id + 1];
+	}
+
+	public int getChildId(int index) {
+		return childIds[index];
+	}
+
+	/**
+	 * @param id the node id
+	 * @return the end of the id range of the subtree of the node, exclusive
+	 */
+	public int getSubtreeEnd(int id) {
+		return subtreeEnds[id];
+	}
+
+	/**
+	 * @param ancestorId the ancestor node id
+	 * @param id the node id
+	 * @return true if the node is a descendant of the ancestor node
+	 */
+	public boolean isAncestorOf(int ancestorId, int id) {
+		return ancestorId < id && id < subtreeEnds[ancestorId];
+	}
+
+	//endregion Nodes
+
+	//region Strings
+
+	public int getStringCount() {
+		return strings.length;
+	}
+
+	@Nonnull
+	public String getString(int index) {
+		return strings[index];
+	}
+
+	public int getNameIndex(int id) {
+		return nameIndices[id];
+	}
+
+	public int getUniqueNameIndex(int id) {
+		return uniqueNameIndices[id];
+	}
+
+	public int getSignatureIndex(int id) {
+		return signatureIndices[id];
+	}
+
+	@Nonnull
+	public String getName(int id) {
+		return strings[nameIndices[id]];
+	}
+
+	@Nonnull
+	public String getUniqueName(int id) {
+		return strings[uniqueNameIndices[id]];
+	}
+
+	@Nonnull
+	public String getSignature(int id) {
+		return strings[signatureIndices[id]];
+	}
+
+	//endregion Strings
+}
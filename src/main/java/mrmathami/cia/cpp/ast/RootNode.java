@@ -1,19 +1,23 @@
 package mrmathami.cia.cpp.ast;
 
 import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.HashMap;
 import java.util.List;
 import java.util.stream.StreamSupport;
 
 public final class RootNode extends CppNode implements IIntegralContainer, IClassContainer, IEnumContainer, IFunctionContainer, IVariableContainer, ITypedefContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	private int nodeCount;
 
+	@Nullable private NodeTable table;
+	@Nullable private volatile DependencyGraph graph;
+	@Nullable private long[] fingerprints;
+
 	public RootNode() {
 		setName("ROOT");
 		setUniqueName("ROOT");
@@ -21,14 +25,68 @@ public final class RootNode extends CppNode implements IIntegralContainer, IClas
 	}
 
 	public void lock() {
-		final HashMap<String, String> stringPool = new HashMap<>();
-		final HashMap<DependencyMap, DependencyMap> countsPool = new HashMap<>();
-		if (isWritable()) internalLock(stringPool, countsPool);
+		lock(BodyStorage.STRING);
+	}
+
+	/**
+	 * Lock the tree, and convert the bodies of all nodes to the specified storage.
+	 *
+	 * @param bodyStorage the body storage
+	 */
+	public void lock(@Nonnull BodyStorage bodyStorage) {
+		lock(bodyStorage, GraphStorage.HEAP);
+	}
+
+	/**
+	 * Lock the tree, convert the bodies of all nodes and create the dependency graph in the specified storages.
+	 *
+	 * @param bodyStorage the body storage
+	 * @param graphStorage the dependency graph storage
+	 */
+	public void lock(@Nonnull BodyStorage bodyStorage, @Nonnull GraphStorage graphStorage) {
+		lock(bodyStorage, graphStorage, new SymbolTable());
+	}
+
+	/**
+	 * Lock the tree, convert the bodies of all nodes and create the dependency graph in the specified storages. All
+	 * nodes are numbered in preorder, starting from zero at the root node, so every subtree is a contiguous id range.
+	 * Names, signatures and bodies are pooled in the symbol table, which can be shared with other trees.
+	 * <p>
+	 * A locked tree is immutable: every cache is filled before this method returns, so once the tree is safely
+	 * published, e.g. through a final field or a thread-safe collection, it can be read from many threads without
+	 * locking. The only exception is {@link #setGraphStorage}, which replaces the graph atomically.
+	 *
+	 * @param bodyStorage the body storage
+	 * @param graphStorage the dependency graph storage
+	 * @param symbolTable the symbol table
+	 */
+	public void lock(@Nonnull BodyStorage bodyStorage, @Nonnull GraphStorage graphStorage,
+			@Nonnull SymbolTable symbolTable) {
+		if (!isWritable()) return;
+		int nodeId = 0;
+		setId(nodeId++);
+		for (final CppNode node : this) node.setId(nodeId++);
+		this.nodeCount = nodeId;
+
+		internalLock(symbolTable, bodyStorage);
 		for (final CppNode node : this) {
-			if (node.isWritable()) node.internalLock(stringPool, countsPool);
+			if (node.isWritable()) node.internalLock(symbolTable, bodyStorage);
+		}
+		buildTables(graphStorage, null);
+	}
+
+	private void buildTables(@Nonnull GraphStorage graphStorage, @Nullable long[] fingerprints) {
+		final NodeTable table = NodeTable.build(this);
+		final DependencyGraph graph = DependencyGraph.build(table, graphStorage);
+		for (int id = 0; id < nodeCount; id++) {
+			final CppNode node = table.getNode(id);
+			node.releaseRawDependency();
+			node.internalSetRoot(this);
 		}
-		stringPool.clear();
-		countsPool.clear();
+		this.table = table;
+		this.graph = graph;
+		for (int id = 0; id < nodeCount; id++) table.getNode(id).releaseChildren();
+		this.fingerprints = fingerprints != null ? fingerprints : Matcher.computeFingerprints(table);
 	}
 
 	public int getNodeCount() {
@@ -40,6 +98,49 @@ public final class RootNode extends CppNode implements IIntegralContainer, IClas
 		this.nodeCount = nodeCount;
 	}
 
+	/**
+	 * Get the node table of the tree. Only available after the tree is locked.
+	 *
+	 * @return the node table
+	 */
+	@Nonnull
+	public NodeTable getNodeTable() {
+		if (table == null) throw new UnsupportedOperationException("Writable tree does not have a node table!");
+		return table;
+	}
+
+	@Nullable
+	NodeTable internalGetNodeTable() {
+		return table;
+	}
+
+	@Nullable
+	long[] internalGetFingerprints() {
+		return fingerprints;
+	}
+
+	/**
+	 * Get the dependency graph of the tree. Only available after the tree is locked.
+	 *
+	 * @return the dependency graph
+	 */
+	@Nonnull
+	public DependencyGraph getDependencyGraph() {
+		final DependencyGraph graph = this.graph;
+		if (graph == null) throw new UnsupportedOperationException("Writable tree does not have a dependency graph!");
+		return graph;
+	}
+
+	/**
+	 * Move the dependency graph of a locked tree to another storage, e.g. after the tree is read. Readers on other
+	 * threads see either the old graph or the new one, both with the same content.
+	 *
+	 * @param graphStorage the dependency graph storage
+	 */
+	public void setGraphStorage(@Nonnull GraphStorage graphStorage) {
+		this.graph = getDependencyGraph().toStorage(graphStorage);
+	}
+
 	//region Containers
 
 	@Nonnull
@@ -95,6 +196,10 @@ public final class RootNode extends CppNode implements IIntegralContainer, IClas
 
 		write(output);
 		for (final CppNode node : nodes) node.write(output);
+
+		// the fingerprints are kept with the version of the hashers that computed them
+		output.writeInt(Fingerprint.VERSION);
+		output.writeObject(fingerprints);
 	}
 
 	@Override
@@ -103,6 +208,12 @@ public final class RootNode extends CppNode implements IIntegralContainer, IClas
 
 		read(input);
 		for (final CppNode node : nodes) node.read(input);
+
+		// fingerprints from other versions of the hashers are computed again
+		final int fingerprintVersion = input.readInt();
+		final long[] fingerprints = castNullable(input.readObject(), long[].class);
+		buildTables(GraphStorage.HEAP, fingerprintVersion == Fingerprint.VERSION && fingerprints != null
+				&& fingerprints.length == nodeCount * MatchLevel.values.length ? fingerprints : null);
 	}
 
 	@Override
@@ -0,0 +1,89 @@
+package mrmathami.cia.cpp.ast;
+
+import mrmathami.annotations.Nonnull;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool of the names, unique names, signatures and bodies of locked trees. Trees locked against the same table share one
+ * instance of every equal string and body, so versions of the same project cost little more than their differences, and
+ * comparing equal names across those versions stops at the reference check. The table is thread-safe, so versions can
+ * be locked against it concurrently.
+ */
+public final class SymbolTable implements Serializable {
+	private static final long serialVersionUID = -1L;
+
+	@Nonnull private transient Map<String, String> strings = new ConcurrentHashMap<>();
+	@Nonnull private transient Map<BodyStorage, Map<Body, Body>> bodies = createBodies();
+
+	public SymbolTable() {
+	}
+
+	@Nonnull
+	private static Map<BodyStorage, Map<Body, Body>> createBodies() {
+		final Map<BodyStorage, Map<Body, Body>> bodies = new EnumMap<>(BodyStorage.class);
+		for (final BodyStorage storage : BodyStorage.values()) bodies.put(storage, new ConcurrentHashMap<>());
+		return bodies;
+	}
+
+	/**
+	 * Get the pooled instance of a string.
+	 *
+	 * @param string the string
+	 * @return the pooled string, equal to the input
+	 */
+	@Nonnull
+	public String intern(@Nonnull String string) {
+		final String pooled = strings.putIfAbsent(string, string);
+		return pooled != null ? pooled : string;
+	}
+
+	@Nonnull
+	Body intern(@Nonnull Body body, @Nonnull BodyStorage storage) {
+		final Map<Body, Body> map = bodies.get(storage);
+		final Body pooled = map.get(body);
+		if (pooled != null) return pooled;
+		// the converted body is its own key, so the pool never keeps the text of a compressed or hashed body
+		final Body stored = body.toStorage(storage);
+		final Body previous = map.putIfAbsent(stored, stored);
+		return previous != null ? previous : stored;
+	}
+
+	public int getStringCount() {
+		return strings.size();
+	}
+
+	//region Object Helper
+
+	private void writeObject(@Nonnull ObjectOutputStream output) throws IOException {
+		output.defaultWriteObject();
+		output.writeObject(strings.keySet().toArray(String[]::new));
+		for (final BodyStorage storage : BodyStorage.values()) {
+			output.writeObject(bodies.get(storage).values().toArray(Body[]::new));
+		}
+	}
+
+	private void readObject(@Nonnull ObjectInputStream input) throws IOException, ClassNotFoundException {
+		input.defaultReadObject();
+		this.strings = new ConcurrentHashMap<>();
+		this.bodies = createBodies();
+		final Object stringArray = input.readObject();
+		if (!(stringArray instanceof String[])) throw new InvalidObjectException("Wrong symbol table format!");
+		for (final String string : (String[]) stringArray) strings.put(string, string);
+		for (final BodyStorage storage : BodyStorage.values()) {
+			final Object bodyArray = input.readObject();
+			if (!(bodyArray instanceof Body[])) throw new InvalidObjectException("Wrong symbol table format!");
+			final Map<Body, Body> map = bodies.get(storage);
+			for (final Body body : (Body[]) bodyArray) map.put(body, body);
+		}
+	}
+
+	//endregion Object Helper
+}
@@ -10,7 +10,7 @@ import java.io.ObjectOutput;
 import java.util.List;
 
 public final class TypedefNode extends CppNode implements ITypeContainer, ITypedefContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nullable private CppNode type;
 
@@ -48,9 +48,9 @@ public final class TypedefNode extends CppNode implements ITypeContainer, ITyped
 	}
 
 	@Override
-	protected int similarHashcode(@Nonnull Matcher matcher) {
-		int result = super.similarHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.PROTOTYPE_IDENTICAL);
+	protected long similarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.similarFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.PROTOTYPE_IDENTICAL));
 		return result;
 	}
 
@@ -61,9 +61,9 @@ public final class TypedefNode extends CppNode implements ITypeContainer, ITyped
 	}
 
 	@Override
-	protected int identicalHashcode(@Nonnull Matcher matcher) {
-		int result = super.identicalHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.PROTOTYPE_IDENTICAL);
+	protected long identicalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.identicalFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.PROTOTYPE_IDENTICAL));
 		return result;
 	}
 	//</editor-fold>
@@ -7,13 +7,12 @@ import mrmathami.annotations.Nullable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.util.Map;
 import java.util.Objects;
 
 public final class VariableNode extends CppNode implements IBodyContainer, ITypeContainer {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
-	@Nullable private String body;
+	@Nullable private Body body;
 	@Nullable private CppNode type;
 
 	public VariableNode() {
@@ -22,6 +21,11 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 	@Nullable
 	@Override
 	public String getBody() {
+		return body != null ? body.getText() : null;
+	}
+
+	@Nullable
+	Body internalGetBody() {
 		return body;
 	}
 
@@ -29,7 +33,7 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 	@Override
 	public void setBody(@Nullable String body) {
 		checkReadOnly();
-		this.body = body;
+		this.body = Body.ofNullable(body);
 	}
 
 	@Nullable
@@ -57,9 +61,9 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 	}
 
 	@Override
-	protected int similarHashcode(@Nonnull Matcher matcher) {
-		int result = super.similarHashcode(matcher);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.PROTOTYPE_IDENTICAL);
+	protected long similarFingerprint(@Nonnull Matcher matcher) {
+		long result = super.similarFingerprint(matcher);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.PROTOTYPE_IDENTICAL));
 		return result;
 	}
 
@@ -71,10 +75,10 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 	}
 
 	@Override
-	protected int identicalHashcode(@Nonnull Matcher matcher) {
-		int result = super.identicalHashcode(matcher);
-		result = 31 * result + (body != null ? body.hashCode() : 0);
-		result = 31 * result + matcher.nodeHashcode(type, MatchLevel.PROTOTYPE_IDENTICAL);
+	protected long identicalFingerprint(@Nonnull Matcher matcher) {
+		long result = super.identicalFingerprint(matcher);
+		result = Fingerprint.combine(result, body != null ? body.fingerprint() : 0L);
+		result = Fingerprint.combine(result, matcher.nodeFingerprint(type, MatchLevel.PROTOTYPE_IDENTICAL));
 		return result;
 	}
 	//endregion Node Comparator
@@ -82,9 +86,9 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 	//region TreeNode
 
 	@Override
-	void internalLock(@Nonnull Map<String, String> stringPool, @Nonnull Map<DependencyMap, DependencyMap> countsPool) {
-		super.internalLock(stringPool, countsPool);
-		if (body != null) this.body = stringPool.computeIfAbsent(body, String::toString);
+	void internalLock(@Nonnull SymbolTable symbolTable, @Nonnull BodyStorage bodyStorage) {
+		super.internalLock(symbolTable, bodyStorage);
+		if (body != null) this.body = symbolTable.intern(body, bodyStorage);
 	}
 
 	@Override
@@ -100,9 +104,10 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 		final StringBuilder builder = new StringBuilder();
 		builder.append(", \"type\": ").append(type)
 				.append(", \"body\": ");
-		if (body != null) {
+		final String bodyText = getBody();
+		if (bodyText != null) {
 			builder.append("\"");
-			escapeBody(builder, body);
+			escapeBody(builder, bodyText);
 			builder.append("\"");
 		} else {
 			builder.append("null");
@@ -124,7 +129,7 @@ public final class VariableNode extends CppNode implements IBodyContainer, IType
 	public void read(@Nonnull ObjectInput input) throws IOException, ClassNotFoundException {
 		super.read(input);
 
-		this.body = castNullable(input.readObject(), String.class);
+		this.body = castNullable(input.readObject(), Body.class);
 		this.type = castNullable(input.readObject(), CppNode.class);
 	}
 
@@ -3,15 +3,18 @@ package mrmathami.cia.cpp.builder;
 import mrmathami.annotations.Nonnull;
 import mrmathami.annotations.Nullable;
 import mrmathami.cia.cpp.CppException;
+import mrmathami.cia.cpp.ast.BodyStorage;
 import mrmathami.cia.cpp.ast.ClassNode;
 import mrmathami.cia.cpp.ast.CppNode;
 import mrmathami.cia.cpp.ast.DependencyType;
 import mrmathami.cia.cpp.ast.EnumNode;
 import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.GraphStorage;
 import mrmathami.cia.cpp.ast.IBodyContainer;
 import mrmathami.cia.cpp.ast.IntegralNode;
 import mrmathami.cia.cpp.ast.NamespaceNode;
 import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.ast.SymbolTable;
 import mrmathami.cia.cpp.ast.TypedefNode;
 import mrmathami.cia.cpp.ast.VariableNode;
 import mrmathami.utils.Pair;
@@ -23,6 +26,7 @@ import org.eclipse.cdt.core.dom.ast.IASTDeclaration;
 import org.eclipse.cdt.core.dom.ast.IASTDeclarator;
 import org.eclipse.cdt.core.dom.ast.IASTEnumerationSpecifier;
 import org.eclipse.cdt.core.dom.ast.IASTExpression;
+import org.eclipse.cdt.core.dom.ast.IASTFileLocation;
 import org.eclipse.cdt.core.dom.ast.IASTInitializer;
 import org.eclipse.cdt.core.dom.ast.IASTName;
 import org.eclipse.cdt.core.dom.ast.IASTNamedTypeSpecifier;
@@ -88,14 +92,29 @@ final class AstBuilder {
 	@Nonnull private final Set<IntegralNode> unknownNodes = new LinkedHashSet<>();
 	@Nonnull private final Queue<Pair<CppNode, IASTNode>> childrenCreationQueue = new LinkedList<>();
 	@Nonnull private final RootNode rootNode = new RootNode();
+	@Nonnull private final DependencyBuffer dependencies = new DependencyBuffer();
+	@Nullable private final FileOriginTable.Builder origins;
 
-	private AstBuilder() {
+	private AstBuilder(@Nullable FileOriginTable.Builder origins) {
+		this.origins = origins;
+		dependencies.register(rootNode);
 	}
 
 	@Nonnull
-	public static RootNode build(@Nonnull IASTTranslationUnit translationUnit) throws CppException {
+	public static RootNode build(@Nonnull IASTTranslationUnit translationUnit, @Nonnull BodyStorage bodyStorage,
+			@Nonnull GraphStorage graphStorage, @Nonnull SymbolTable symbolTable) throws CppException {
+		return build(translationUnit, bodyStorage, graphStorage, symbolTable, null);
+	}
+
+	/**
+	 * Build the component tree, and add the locations of the declarations of the nodes to the origin table builder.
+	 */
+	@Nonnull
+	public static RootNode build(@Nonnull IASTTranslationUnit translationUnit, @Nonnull BodyStorage bodyStorage,
+			@Nonnull GraphStorage graphStorage, @Nonnull SymbolTable symbolTable,
+			@Nullable FileOriginTable.Builder origins) throws CppException {
 		try {
-			return new AstBuilder().internalBuild(translationUnit);
+			return new AstBuilder(origins).internalBuild(translationUnit, bodyStorage, graphStorage, symbolTable);
 		} catch (IllegalArgumentException e) {
 			throw new CppException("Cannot build component tree from TranslationUnit!", e);
 		}
@@ -109,20 +128,26 @@ final class AstBuilder {
 		return "";
 	}
 
-	private void mergeDuplicate(@Nonnull CppNode.Matcher matcher, @Nonnull CppNode node) {
-		final Map<CppNode.Wrapper, CppNode> nodeMap = new HashMap<>();
-		for (final CppNode childNode : List.copyOf(node.getChildren())) {
-			final CppNode.Wrapper wrapper = new CppNode.Wrapper(childNode, CppNode.MatchLevel.SIMILAR, matcher);
-			final CppNode existingNode = nodeMap.putIfAbsent(wrapper, childNode);
-			if (existingNode == null) continue;
+	private void mergeDuplicate(@Nonnull Map<DuplicateKey, DuplicateKey> keyMap, @Nonnull CppNode.Matcher matcher,
+			@Nonnull CppNode node) {
+		final List<CppNode> children = node.getChildren();
+		if (children.size() < 2) return;
+		for (final CppNode childNode : children.toArray(new CppNode[0])) {
+			final DuplicateKey key = new DuplicateKey(childNode, matcher);
+			final DuplicateKey existingKey = keyMap.putIfAbsent(key, key);
+			if (existingKey == null) continue;
+			final CppNode existingNode = existingKey.node;
 			if (existingNode instanceof IBodyContainer) {
 				if (((IBodyContainer) existingNode).getBody() == null) {
+					transferOrigins(existingNode, childNode);
 					existingNode.transfer(childNode);
-					nodeMap.put(wrapper, childNode);
+					existingKey.node = childNode;
 				} else {
+					transferOrigins(childNode, existingNode);
 					childNode.transfer(existingNode);
 				}
 			} else {
+				transferOrigins(childNode, existingNode);
 				childNode.transfer(existingNode);
 				if (childNode instanceof IntegralNode) {
 					integralNodeMap.remove(childNode.getName());
@@ -171,11 +196,12 @@ final class AstBuilder {
 		}
 		unknownNodes.clear();
 
-		// merge duplicates
+		// merge duplicates, one key map for the whole tree since the parent is part of the key
 		final CppNode.Matcher matcher = new CppNode.Matcher();
-		mergeDuplicate(matcher, rootNode);
+		final Map<DuplicateKey, DuplicateKey> keyMap = new HashMap<>();
+		mergeDuplicate(keyMap, matcher, rootNode);
 		for (final CppNode node : rootNode) {
-			mergeDuplicate(matcher, node);
+			mergeDuplicate(keyMap, matcher, node);
 		}
 	}
 
@@ -209,7 +235,8 @@ final class AstBuilder {
 	}
 
 	@Nonnull
-	private RootNode internalBuild(@Nonnull IASTTranslationUnit translationUnit) {
+	private RootNode internalBuild(@Nonnull IASTTranslationUnit translationUnit, @Nonnull BodyStorage bodyStorage,
+			@Nonnull GraphStorage graphStorage, @Nonnull SymbolTable symbolTable) {
 		for (final IASTDeclaration declaration : translationUnit.getDeclarations()) {
 			createChildrenFromDeclaration(rootNode, declaration);
 		}
@@ -218,16 +245,12 @@ final class AstBuilder {
 			final Pair<CppNode, IASTNode> pair = childrenCreationQueue.poll();
 			createChildrenFromAstNode(pair.getA(), pair.getB());
 		}
+		dependencies.flush();
 
 		cleanUp();
 		createOverride();
 		rootNode.removeAllDependency();
-
-		int nodeId = 0;
-		for (final CppNode node : rootNode) node.setId(++nodeId);
-		rootNode.setNodeCount(++nodeId);
-
-		rootNode.lock();
+		rootNode.lock(bodyStorage, graphStorage, symbolTable);
 		return rootNode;
 	}
 
@@ -242,9 +265,21 @@ final class AstBuilder {
 			if (pair.getA() == oldNode) pair.setA(newNode);
 		}
 
+		dependencies.replace(oldNode, newNode);
+		transferOrigins(oldNode, newNode);
 		oldNode.transfer(newNode);
 	}
 
+	private void transferOrigins(@Nonnull CppNode oldNode, @Nonnull CppNode newNode) {
+		if (origins != null) origins.transfer(oldNode, newNode);
+	}
+
+	private void addOrigin(@Nonnull CppNode node, @Nullable IASTNode astNode) {
+		if (origins == null || astNode == null) return;
+		final IASTFileLocation location = astNode.getFileLocation();
+		if (location != null) origins.addOrigin(node, location.getNodeOffset());
+	}
+
 	@Nonnull
 	private CppNode createIntegralNode(@Nonnull String typeName) {
 		final CppNode existNode = integralNodeMap.get(typeName);
@@ -252,6 +287,7 @@ final class AstBuilder {
 
 		final IntegralNode newNode = new IntegralNode(typeName);
 		rootNode.addChild(newNode);
+		dependencies.register(newNode);
 		integralNodeMap.put(typeName, newNode);
 		return newNode;
 	}
@@ -267,13 +303,14 @@ final class AstBuilder {
 
 		final CppNode existNode = bindingNodeMap.get(topBinding);
 		if (existNode != null) {
-			if (createUseDependency) parentNode.addDependencyTo(existNode, DependencyType.USE);
+			if (createUseDependency) dependencies.add(parentNode, existNode, DependencyType.USE);
 			return existNode;
 		}
 
 		final IntegralNode newNode = new IntegralNode(name);
 		parentNode.addChild(newNode);
-		if (createUseDependency) parentNode.addDependencyTo(newNode, DependencyType.USE);
+		dependencies.register(newNode);
+		if (createUseDependency) dependencies.add(parentNode, newNode, DependencyType.USE);
 		bindingNodeMap.put(topBinding, newNode);
 		unknownNodes.add(newNode);
 		return newNode;
@@ -292,7 +329,10 @@ final class AstBuilder {
 				: binding;
 
 		final CppNode existNode = bindingNodeMap.get(topBinding);
-		if (existNode != null && !(existNode instanceof IntegralNode)) return existNode;
+		if (existNode != null && !(existNode instanceof IntegralNode)) {
+			addOrigin(existNode, astName);
+			return existNode;
+		}
 
 		final String name = firstNonBlank(astName != null ? astName.getLastName().toString() : null, topBinding.getName());
 		final String uniqueName = firstNonBlank(topBinding instanceof ICPPBinding
@@ -303,7 +343,9 @@ final class AstBuilder {
 		newNode.setUniqueName(uniqueName);
 		newNode.setSignature(signature != null ? signature : uniqueName);
 		parentNode.addChild(newNode);
-		parentNode.addDependencyTo(newNode, DependencyType.MEMBER);
+		dependencies.register(newNode);
+		dependencies.add(parentNode, newNode, DependencyType.MEMBER);
+		addOrigin(newNode, astName);
 
 		bindingNodeMap.put(topBinding, newNode);
 		if (existNode != null) replaceNode(existNode, newNode);
@@ -416,9 +458,9 @@ final class AstBuilder {
 							new VariableNode(), enumNode);
 					if (enumeratorNode.getParent() == null) {
 						enumNode.addChild(enumeratorNode);
-						enumNode.addDependencyTo(enumeratorNode, DependencyType.MEMBER);
+						dependencies.add(enumNode, enumeratorNode, DependencyType.MEMBER);
 					} else {
-						parentNode.addDependencyTo(enumNode, DependencyType.USE);
+						dependencies.add(parentNode, enumNode, DependencyType.USE);
 					}
 					if (enumeratorNode instanceof VariableNode) {
 						if (nodeType != null) {
@@ -715,11 +757,50 @@ final class AstBuilder {
 				final IASTName astName = (IASTName) astChild;
 				final CppNode childNode
 						= createUnknownNode(parentNode, astName.resolveBinding(), astName.toString(), false);
-				parentNode.addDependencyTo(childNode,
+				dependencies.add(parentNode, childNode,
 						childNode instanceof FunctionNode ? DependencyType.INVOCATION : DependencyType.USE);
 			} else {
 				createChildrenFromAstNode(parentNode, astChild);
 			}
 		}
 	}
+
+	/**
+	 * Hash-consing key of a node, used to find duplicated declarations under the same parent. The hash only uses the
+	 * precomputed kind, name, unique name, signature and parent of the node, so creating a key never recurses through
+	 * the parent chain. The full {@link CppNode.MatchLevel#SIMILAR} comparison is only done on hash collision.
+	 */
+	private static final class DuplicateKey {
+		@Nonnull private final CppNode.Matcher matcher;
+		@Nullable private final CppNode parent;
+		private final int hashcode;
+		@Nonnull private CppNode node;
+
+		DuplicateKey(@Nonnull CppNode node, @Nonnull CppNode.Matcher matcher) {
+			this.matcher = matcher;
+			this.parent = node.getParent();
+			this.node = node;
+
+			int result = System.identityHashCode(parent);
+			result = 31 * result + node.getClass().hashCode();
+			result = 31 * result + node.getName().hashCode();
+			result = 31 * result + node.getUniqueName().hashCode();
+			result = 31 * result + node.getSignature().hashCode();
+			this.hashcode = result;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) return true;
+			if (!(object instanceof DuplicateKey)) return false;
+			final DuplicateKey key = (DuplicateKey) object;
+			return hashcode == key.hashcode && parent == key.parent
+					&& matcher.isNodeMatch(node, key.node, CppNode.MatchLevel.SIMILAR);
+		}
+	}
 }
@@ -0,0 +1,99 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Build-time buffer of the dependencies found while walking the AST. Every dependency is appended as one packed
+ * {@code (fromIndex, toIndex, type)} key, and the keys are sorted and added to the nodes in bulk when the buffer is
+ * flushed, so each distinct dependency costs one map update instead of one per reference. Nodes are registered with
+ * the buffer when they are created, and their ids hold their buffer indices until the tree is locked.
+ */
+final class DependencyBuffer {
+	private static final int TYPE_BITS = 3;
+	private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+	private static final int MAX_NODES = 1 << (Integer.SIZE - 1 - TYPE_BITS);
+	private static final int INITIAL_CAPACITY = 1024;
+
+	@Nonnull private final List<CppNode> nodes = new ArrayList<>();
+	@Nonnull private long[] keys = new long[INITIAL_CAPACITY];
+	private int keyCount;
+
+	/**
+	 * Register a newly created node.
+	 *
+	 * @param node the node
+	 */
+	void register(@Nonnull CppNode node) {
+		final int index = nodes.size();
+		if (index >= MAX_NODES) throw new IllegalArgumentException("Too many nodes!");
+		node.setId(index);
+		nodes.add(node);
+	}
+
+	/**
+	 * Redirect all buffered dependencies of a node to the node that replaces it.
+	 *
+	 * @param oldNode the replaced node
+	 * @param newNode the new node
+	 */
+	void replace(@Nonnull CppNode oldNode, @Nonnull CppNode newNode) {
+		assert isCurrent(oldNode) && isCurrent(newNode);
+		nodes.set(oldNode.getId(), newNode);
+	}
+
+	/**
+	 * Buffer a dependency. Like {@link CppNode#addDependencyTo}, a dependency from or to a node that is no longer in
+	 * the tree is dropped.
+	 *
+	 * @param fromNode the depending node
+	 * @param toNode the node depended on
+	 * @param type the dependency type
+	 */
+	void add(@Nonnull CppNode fromNode, @Nonnull CppNode toNode, @Nonnull DependencyType type) {
+		if (!isCurrent(fromNode) || !isCurrent(toNode)) return;
+		if (keyCount == keys.length) this.keys = Arrays.copyOf(keys, keyCount * 2);
+		keys[keyCount++] = (long) fromNode.getId() << Integer.SIZE
+				| (long) toNode.getId() << TYPE_BITS | type.ordinal();
+	}
+
+	/**
+	 * Add all buffered dependencies to the nodes and clear the buffer.
+	 */
+	void flush() {
+		Arrays.sort(keys, 0, keyCount);
+		int index = 0;
+		while (index < keyCount) {
+			final long key = keys[index];
+			int end = index + 1;
+			while (end < keyCount && keys[end] == key) end += 1;
+			final CppNode fromNode = resolve((int) (key >>> Integer.SIZE));
+			final CppNode toNode = resolve((int) key >>> TYPE_BITS);
+			fromNode.addDependencyTo(toNode, DependencyType.values.get((int) key & TYPE_MASK), end - index);
+			index = end;
+		}
+		this.keys = new long[INITIAL_CAPACITY];
+		this.keyCount = 0;
+	}
+
+	private boolean isCurrent(@Nonnull CppNode node) {
+		final int index = node.getId();
+		return index >= 0 && index < nodes.size() && nodes.get(index) == node;
+	}
+
+	// follow the replacement chain of a node to the node that is still in the tree
+	@Nonnull
+	private CppNode resolve(int index) {
+		CppNode node = nodes.get(index);
+		while (node.getId() != index) {
+			index = node.getId();
+			node = nodes.get(index);
+		}
+		return node;
+	}
+}
@@ -0,0 +1,306 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.NodeTable;
+import mrmathami.cia.cpp.ast.RootNode;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The source files the nodes of a version come from. Every file has the content hash of the code the preprocessor
+ * produced from it, so a change of a macro defined in another file still changes the hash. The origin files of node
+ * {@code id} are the files of the locations it is declared or defined at; nodes that were not declared anywhere, like
+ * the root and the integral nodes, have no origin.
+ */
+public final class FileOriginTable implements Serializable {
+	private static final long serialVersionUID = -1L;
+
+	@Nonnull private final List<String> files;
+	@Nonnull private final long[] fileHashes; // two longs per file
+	@Nonnull private final int[] nodeOffsets;
+	@Nonnull private final int[] nodeFiles;
+
+	private FileOriginTable(@Nonnull List<String> files, @Nonnull long[] fileHashes, @Nonnull int[] nodeOffsets,
+			@Nonnull int[] nodeFiles) {
+		this.files = List.copyOf(files);
+		this.fileHashes = fileHashes;
+		this.nodeOffsets = nodeOffsets;
+		this.nodeFiles = nodeFiles;
+	}
+
+	/**
+	 * Get the files of the version, relative to the project root when they are inside it.
+	 *
+	 * @return the files
+	 */
+	@Nonnull
+	public List<String> getFiles() {
+		return files;
+	}
+
+	/**
+	 * Get the origin files of a node of the version.
+	 *
+	 * @param node the node
+	 * @return the files, empty if the node has no origin
+	 */
+	@Nonnull
+	public List<String> getNodeFiles(@Nonnull CppNode node) {
+		final int id = node.getId();
+		final String[] nodeFileNames = new String[nodeOffsets[id + 1] - nodeOffsets[id]];
+		for (int index = 0; index < nodeFileNames.length; index++) {
+			nodeFileNames[index] = files.get(nodeFiles[nodeOffsets[id] + index]);
+		}
+		return List.of(nodeFileNames);
+	}
+
+	/**
+	 * Get the files whose content is different in another version, including the files only one of the versions has.
+	 *
+	 * @param other the origin table of the other version
+	 * @return the changed files
+	 */
+	@Nonnull
+	public Set<String> getChangedFiles(@Nonnull FileOriginTable other) {
+		final Map<String, Integer> otherIndices = other.fileIndices();
+		final Set<String> changedFiles = new LinkedHashSet<>();
+		for (int index = 0; index < files.size(); index++) {
+			final Integer otherIndex = otherIndices.remove(files.get(index));
+			if (otherIndex == null || !isSameFile(index, other, otherIndex)) changedFiles.add(files.get(index));
+		}
+		changedFiles.addAll(otherIndices.keySet());
+		return changedFiles;
+	}
+
+	/**
+	 * Check if a node of the version has an origin, and none of its origin files is changed.
+	 *
+	 * @param node the node
+	 * @param changedFiles the changed files, see {@link #getChangedFiles}
+	 * @return true if the node only comes from unchanged files
+	 */
+	public boolean isFromUnchangedFiles(@Nonnull CppNode node, @Nonnull Set<String> changedFiles) {
+		final int start = nodeOffsets[node.getId()];
+		final int end = nodeOffsets[node.getId() + 1];
+		if (start == end) return false;
+		for (int index = start; index < end; index++) {
+			if (changedFiles.contains(files.get(nodeFiles[index]))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check if a node of this version and a node of another version come from the same files, and these files have the
+	 * same content in both versions. Nodes without origin never do.
+	 *
+	 * @param node the node of this version
+	 * @param other the origin table of the other version
+	 * @param otherNode the node of the other version
+	 * @return true if the nodes come from the same unchanged files
+	 */
+	public boolean isSameOrigin(@Nonnull CppNode node, @Nonnull FileOriginTable other, @Nonnull CppNode otherNode) {
+		final int start = nodeOffsets[node.getId()];
+		final int end = nodeOffsets[node.getId() + 1];
+		final int otherStart = other.nodeOffsets[otherNode.getId()];
+		if (start == end || end - start != other.nodeOffsets[otherNode.getId() + 1] - otherStart) return false;
+		// the files of a node are sorted by name, so the same files are at the same positions
+		for (int index = 0; index < end - start; index++) {
+			final int file = nodeFiles[start + index];
+			final int otherFile = other.nodeFiles[otherStart + index];
+			if (!files.get(file).equals(other.files.get(otherFile)) || !isSameFile(file, other, otherFile)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isSameFile(int file, @Nonnull FileOriginTable other, int otherFile) {
+		return fileHashes[file * 2] == other.fileHashes[otherFile * 2]
+				&& fileHashes[file * 2 + 1] == other.fileHashes[otherFile * 2 + 1];
+	}
+
+	@Nonnull
+	private Map<String, Integer> fileIndices() {
+		final Map<String, Integer> indices = new HashMap<>();
+		for (int index = 0; index < files.size(); index++) indices.put(files.get(index), index);
+		return indices;
+	}
+
+	/**
+	 * Collect the origins while a version is built. The preprocessor marks where the code of each file starts in its
+	 * output, and the tree builder adds the output offsets of the declarations of the nodes.
+	 */
+	static final class Builder {
+		@Nonnull private final Path projectRoot;
+		@Nonnull private final List<String> files = new ArrayList<>();
+		@Nonnull private final Map<String, Integer> fileIndices = new HashMap<>();
+		@Nonnull private int[] markOffsets = new int[16];
+		@Nonnull private int[] markFiles = new int[16];
+		private int markCount;
+		@Nonnull private final Map<CppNode, BitSet> nodeOrigins = new IdentityHashMap<>();
+		@Nullable private long[] fileHashes;
+
+		Builder(@Nonnull Path projectRoot) {
+			this.projectRoot = projectRoot;
+		}
+
+		@Nonnull
+		private String relativize(@Nonnull Path path) {
+			final Path normalizedPath = path.normalize();
+			return normalizedPath.startsWith(projectRoot)
+					? projectRoot.relativize(normalizedPath).toString()
+					: normalizedPath.toString();
+		}
+
+		/**
+		 * Mark that the preprocessor output from an offset comes from a source file.
+		 *
+		 * @param path the path of the source file, null if the output is not from a file of the project
+		 * @param offset the offset in the preprocessor output
+		 */
+		void markFile(@Nullable Path path, int offset) {
+			int index = -1;
+			if (path != null) {
+				final String file = relativize(path);
+				final Integer oldIndex = fileIndices.putIfAbsent(file, files.size());
+				index = oldIndex != null ? oldIndex : files.size();
+				if (oldIndex == null) files.add(file);
+			}
+			// a later mark at the same offset replaces the earlier one
+			if (markCount > 0 && markOffsets[markCount - 1] == offset) markCount -= 1;
+			if (markCount == markOffsets.length) {
+				this.markOffsets = Arrays.copyOf(markOffsets, markCount * 2);
+				this.markFiles = Arrays.copyOf(markFiles, markCount * 2);
+			}
+			markOffsets[markCount] = offset;
+			markFiles[markCount] = index;
+			markCount += 1;
+		}
+
+		/**
+		 * Hash the preprocessor output of every file, after the preprocessing is done.
+		 *
+		 * @param content the preprocessor output
+		 */
+		void hashContent(@Nonnull char[] content) {
+			final MessageDigest[] digests = new MessageDigest[files.size()];
+			for (int index = 0; index < digests.length; index++) digests[index] = createDigest();
+			for (int mark = 0; mark < markCount; mark++) {
+				if (markFiles[mark] < 0) continue;
+				final int start = Math.min(markOffsets[mark], content.length);
+				final int end = mark + 1 < markCount ? Math.min(markOffsets[mark + 1], content.length) : content.length;
+				digests[markFiles[mark]].update(new String(content, start, end - start)
+						.getBytes(StandardCharsets.UTF_8));
+			}
+			final long[] hashes = new long[digests.length * 2];
+			for (int index = 0; index < digests.length; index++) {
+				final byte[] digest = digests[index].digest();
+				hashes[index * 2] = toLong(digest, 0);
+				hashes[index * 2 + 1] = toLong(digest, 8);
+			}
+			this.fileHashes = hashes;
+		}
+
+		/**
+		 * Add the location of a declaration of a node.
+		 *
+		 * @param node the node
+		 * @param offset the offset of the declaration in the preprocessor output
+		 */
+		void addOrigin(@Nonnull CppNode node, int offset) {
+			// the last mark at or before the offset
+			int low = 0;
+			int high = markCount - 1;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				if (markOffsets[middle] <= offset) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			if (high >= 0 && markFiles[high] >= 0) nodeOrigins.computeIfAbsent(node, any -> new BitSet()).set(markFiles[high]);
+		}
+
+		/**
+		 * Move the origins of a node to the node that replaces it.
+		 *
+		 * @param oldNode the replaced node
+		 * @param newNode the new node
+		 */
+		void transfer(@Nonnull CppNode oldNode, @Nonnull CppNode newNode) {
+			final BitSet origins = nodeOrigins.remove(oldNode);
+			if (origins != null) nodeOrigins.computeIfAbsent(newNode, any -> new BitSet()).or(origins);
+		}
+
+		@Nonnull
+		FileOriginTable build(@Nonnull RootNode rootNode) {
+			final NodeTable table = rootNode.getNodeTable();
+			final int nodeCount = table.getNodeCount();
+
+			// the files are sorted by name, so are the files of each node
+			final Integer[] order = new Integer[files.size()];
+			for (int index = 0; index < order.length; index++) order[index] = index;
+			Arrays.sort(order, (indexA, indexB) -> files.get(indexA).compareTo(files.get(indexB)));
+			final String[] sortedFiles = new String[order.length];
+			final int[] ranks = new int[order.length];
+			final long[] sortedHashes = new long[order.length * 2];
+			for (int rank = 0; rank < order.length; rank++) {
+				sortedFiles[rank] = files.get(order[rank]);
+				ranks[order[rank]] = rank;
+				if (fileHashes != null) {
+					sortedHashes[rank * 2] = fileHashes[order[rank] * 2];
+					sortedHashes[rank * 2 + 1] = fileHashes[order[rank] * 2 + 1];
+				}
+			}
+
+			final int[] nodeOffsets = new int[nodeCount + 1];
+			int[] nodeFiles = new int[nodeCount];
+			int size = 0;
+			for (int id = 0; id < nodeCount; id++) {
+				nodeOffsets[id] = size;
+				final BitSet origins = nodeOrigins.get(table.getNode(id));
+				if (origins == null) continue;
+				final int start = size;
+				for (int file = origins.nextSetBit(0); file >= 0; file = origins.nextSetBit(file + 1)) {
+					if (size == nodeFiles.length) nodeFiles = Arrays.copyOf(nodeFiles, size * 2 + 1);
+					nodeFiles[size++] = ranks[file];
+				}
+				Arrays.sort(nodeFiles, start, size);
+			}
+			nodeOffsets[nodeCount] = size;
+			return new FileOriginTable(List.of(sortedFiles), sortedHashes, nodeOffsets, Arrays.copyOf(nodeFiles, size));
+		}
+
+		@Nonnull
+		private static MessageDigest createDigest() {
+			try {
+				return MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException exception) {
+				// every implementation of the Java platform is required to support MD5
+				throw new AssertionError(exception);
+			}
+		}
+
+		private static long toLong(@Nonnull byte[] bytes, int offset) {
+			long value = 0;
+			for (int i = offset; i < offset + 8; i++) value = value << 8 | bytes[i] & 0xFF;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.NodeTable;
+import mrmathami.cia.cpp.ast.RootNode;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Name lookup index of the nodes of a locked tree. Node ids are kept sorted by unique name and by name, so an exact
+ * match or a prefix match is a contiguous range of the sorted ids, found by binary search. The index only holds ids,
+ * so it is saved with the {@link ProjectVersion} and does not need to be sorted again after loading.
+ */
+public final class NodeIndex implements Serializable {
+	private static final long serialVersionUID = -1L;
+
+	@Nonnull private final RootNode rootNode;
+	@Nonnull private final int[] uniqueNameIds;
+	@Nonnull private final int[] nameIds;
+
+	NodeIndex(@Nonnull RootNode rootNode) {
+		final NodeTable table = rootNode.getNodeTable();
+		final String[] strings = new String[table.getStringCount()];
+		for (int index = 0; index < strings.length; index++) strings[index] = table.getString(index);
+		final Integer[] order = new Integer[strings.length];
+		for (int index = 0; index < order.length; index++) order[index] = index;
+		Arrays.sort(order, (indexA, indexB) -> strings[indexA].compareTo(strings[indexB]));
+		final int[] ranks = new int[strings.length];
+		for (int rank = 0; rank < order.length; rank++) ranks[order[rank]] = rank;
+
+		final int nodeCount = table.getNodeCount();
+		final long[] uniqueNameKeys = new long[nodeCount];
+		final long[] nameKeys = new long[nodeCount];
+		for (int id = 0; id < nodeCount; id++) {
+			uniqueNameKeys[id] = (long) ranks[table.getUniqueNameIndex(id)] << Integer.SIZE | id;
+			nameKeys[id] = (long) ranks[table.getNameIndex(id)] << Integer.SIZE | id;
+		}
+		this.rootNode = rootNode;
+		this.uniqueNameIds = sortedIds(uniqueNameKeys);
+		this.nameIds = sortedIds(nameKeys);
+	}
+
+	@Nonnull
+	private static int[] sortedIds(@Nonnull long[] keys) {
+		Arrays.sort(keys);
+		final int[] ids = new int[keys.length];
+		for (int index = 0; index < keys.length; index++) ids[index] = (int) keys[index];
+		return ids;
+	}
+
+	/**
+	 * Find the nodes with the specified unique name. Different nodes, e.g. overloaded functions, can share the same
+	 * unique name.
+	 *
+	 * @param uniqueName the unique name
+	 * @return read-only list of nodes, in id order
+	 */
+	@Nonnull
+	public List<CppNode> findByUniqueName(@Nonnull String uniqueName) {
+		return find(uniqueNameIds, uniqueName, true);
+	}
+
+	/**
+	 * Find the nodes whose unique name starts with the specified prefix, e.g. every node inside a namespace.
+	 *
+	 * @param prefix the unique name prefix, e.g. {@code "v8::internal::"}
+	 * @return read-only list of nodes, in unique name order
+	 */
+	@Nonnull
+	public List<CppNode> findByUniqueNamePrefix(@Nonnull String prefix) {
+		final NodeTable table = rootNode.getNodeTable();
+		final int start = lowerBound(table, uniqueNameIds, prefix, true);
+		int low = start;
+		int high = uniqueNameIds.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (table.getUniqueName(uniqueNameIds[middle]).startsWith(prefix)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return start < low ? new NodeList(table, uniqueNameIds, start, low) : List.of();
+	}
+
+	/**
+	 * Find the nodes with the specified simple name.
+	 *
+	 * @param name the name
+	 * @return read-only list of nodes, in id order
+	 */
+	@Nonnull
+	public List<CppNode> findByName(@Nonnull String name) {
+		return find(nameIds, name, false);
+	}
+
+	@Nonnull
+	private List<CppNode> find(@Nonnull int[] ids, @Nonnull String key, boolean uniqueName) {
+		final NodeTable table = rootNode.getNodeTable();
+		final int start = lowerBound(table, ids, key, uniqueName);
+		int end = start;
+		while (end < ids.length && key(table, ids[end], uniqueName).equals(key)) end += 1;
+		return start < end ? new NodeList(table, ids, start, end) : List.of();
+	}
+
+	private static int lowerBound(@Nonnull NodeTable table, @Nonnull int[] ids, @Nonnull String key,
+			boolean uniqueName) {
+		int low = 0;
+		int high = ids.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (key(table, ids[middle], uniqueName).compareTo(key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	@Nonnull
+	private static String key(@Nonnull NodeTable table, int id, boolean uniqueName) {
+		return uniqueName ? table.getUniqueName(id) : table.getName(id);
+	}
+
+	private static final class NodeList extends AbstractList<CppNode> implements RandomAccess {
+		@Nonnull private final NodeTable table;
+		@Nonnull private final int[] ids;
+		private final int start;
+		private final int end;
+
+		NodeList(@Nonnull NodeTable table, @Nonnull int[] ids, int start, int end) {
+			this.table = table;
+			this.ids = ids;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Nonnull
+		@Override
+		public CppNode get(int index) {
+			if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException(index);
+			return table.getNode(ids[start + index]);
+		}
+
+		@Override
+		public int size() {
+			return end - start;
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package mrmathami.cia.cpp.builder;
 
 import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
 import mrmathami.cia.cpp.CppException;
 import mrmathami.utils.Pair;
 import org.anarres.cpp.InputLexerSource;
@@ -118,47 +119,65 @@ final class PreprocessorBuilder {
 	@Nonnull
 	public static char[] build(@Nonnull Path projectRootPath, @Nonnull List<Path> projectFiles,
 			@Nonnull List<Path> includePaths, boolean isReadable) throws CppException {
+		return build(projectRootPath, projectFiles, includePaths, isReadable, null);
+	}
+
+	/**
+	 * Preprocess the project into one blob of code, and mark the source file of every part of the blob in the origin
+	 * table builder.
+	 */
+	@Nonnull
+	public static char[] build(@Nonnull Path projectRootPath, @Nonnull List<Path> projectFiles,
+			@Nonnull List<Path> includePaths, boolean isReadable, @Nullable FileOriginTable.Builder origins)
+			throws CppException {
 		try {
-			final Preprocessor preprocessor = new Preprocessor(EMPTY_PREPROCESSOR_LISTENER);
+			final Path virtualFile = projectRootPath.resolve(UUID.randomUUID() + ".virtual_file");
+			final OriginTracker tracker = origins != null ? new OriginTracker(origins, virtualFile) : null;
+			final Preprocessor preprocessor
+					= new Preprocessor(tracker != null ? tracker : EMPTY_PREPROCESSOR_LISTENER);
 			preprocessor.addFeatures(FEATURE_LIST);
 			preprocessor.setSystemIncludePath(includePaths);
 			final StringBuilder builder = new StringBuilder();
 			for (final Path sourceFile : parseIncludes(projectFiles, includePaths)) {
 				builder.append("#include \"").append(projectRootPath.relativize(sourceFile)).append("\"\n");
 			}
-			final Path virtualFile = projectRootPath.resolve(UUID.randomUUID() + ".virtual_file");
 			preprocessor.addInput(new InputLexerSource(new StringReader(builder.toString()), virtualFile));
 
 			// =====
 			final StringBuilder fileContent = new StringBuilder();
 
 			if (isReadable) {
-				readablePreprocessor(preprocessor, fileContent);
+				readablePreprocessor(preprocessor, fileContent, tracker);
 			} else {
-				fastPreprocessor(preprocessor, fileContent);
+				fastPreprocessor(preprocessor, fileContent, tracker);
 			}
 			// =====
 
 			char[] content = new char[fileContent.length()];
 			fileContent.getChars(0, content.length, content, 0);
+			if (origins != null) origins.hashContent(content);
 			return content;
 		} catch (IOException | LexerException e) {
 			throw new CppException("Cannot preprocess the source code!", e);
 		}
 	}
 
-	private static void fastPreprocessor(@Nonnull Preprocessor preprocessor,
-			@Nonnull StringBuilder fileContent) throws IOException, LexerException {
+	private static void fastPreprocessor(@Nonnull Preprocessor preprocessor, @Nonnull StringBuilder fileContent,
+			@Nullable OriginTracker tracker) throws IOException, LexerException {
 		boolean haveEndSpace = true;
 		while (true) {
 			final Token token = preprocessor.token();
 
 			switch (token.getType()) {
+				case Token.P_LINE:
+					if (tracker != null) tracker.mark(fileContent.length());
+					haveEndSpace = true;
+					continue;
+
 				case Token.NEW_LINE:
 				case Token.WHITESPACE:
 				case Token.C_COMMENT:
 				case Token.CPP_COMMENT:
-				case Token.P_LINE:
 					haveEndSpace = true;
 					continue;
 
@@ -177,13 +196,14 @@ final class PreprocessorBuilder {
 		}
 	}
 
-	private static void readablePreprocessor(@Nonnull Preprocessor preprocessor,
-			@Nonnull StringBuilder fileContent) throws IOException, LexerException {
+	private static void readablePreprocessor(@Nonnull Preprocessor preprocessor, @Nonnull StringBuilder fileContent,
+			@Nullable OriginTracker tracker) throws IOException, LexerException {
 		int emptyLine = 1;
 		final StringBuilder emptyLineBuilder = new StringBuilder();
 		while (true) {
 			final Token tok = preprocessor.token();
 			if (tok.getType() == Token.EOF) break;
+			if (tok.getType() == Token.P_LINE && tracker != null) tracker.mark(fileContent.length());
 
 			if (tok.getType() != Token.C_COMMENT && tok.getType() != Token.CPP_COMMENT) {
 				final String tokText = tok.getText()
@@ -215,4 +235,39 @@ final class PreprocessorBuilder {
 		}
 		fileContent.append('\n');
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Keeps the file of the current source. The line markers only carry the file name, so the file a marker switches
+	 * to is the path of the source pushed or resumed right before it. The generated list of includes is not a file of
+	 * the project and is marked as no file.
+	 */
+	private static final class OriginTracker implements PreprocessorListener {
+		@Nonnull private final FileOriginTable.Builder origins;
+		@Nonnull private final Path virtualFile;
+		@Nullable private Path currentFile;
+
+		OriginTracker(@Nonnull FileOriginTable.Builder origins, @Nonnull Path virtualFile) {
+			this.origins = origins;
+			this.virtualFile = virtualFile;
+		}
+
+		@Override
+		public void handleWarning(@Nonnull Source source, int line, int column, @Nonnull String msg) {
+		}
+
+		@Override
+		public void handleError(@Nonnull Source source, int line, int column, @Nonnull String msg) {
+		}
+
+		@Override
+		public void handleSourceChange(@Nonnull Source source, @Nonnull SourceChangeEvent event) {
+			if (event == SourceChangeEvent.PUSH || event == SourceChangeEvent.RESUME) {
+				this.currentFile = source.getPath();
+			}
+		}
+
+		void mark(int offset) {
+			origins.markFile(currentFile != null && !currentFile.equals(virtualFile) ? currentFile : null, offset);
+		}
+	}
+}
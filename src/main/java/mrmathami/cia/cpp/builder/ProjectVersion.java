@@ -8,17 +8,26 @@ import mrmathami.cia.cpp.ast.RootNode;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * A built version of a project. A version is immutable and thread-safe: its tree is locked, and the lazily created
+ * maps and indices are immutable and published through volatile fields or under the version's lock, so one instance
+ * can serve queries from many threads.
+ */
 public final class ProjectVersion implements Serializable {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nonnull private final String versionName;
 	@Nonnull private final List<String> projectFiles;
@@ -26,19 +35,30 @@ public final class ProjectVersion implements Serializable {
 	@Nonnull private final RootNode rootNode;
 	@Nonnull private final double[] typeWeights;
 	@Nonnull private final double[] weights;
+	@Nonnull private final NodeIndex nodeIndex;
+	@Nullable private final FileOriginTable fileOrigins;
 
-	@Nullable private transient Map<DependencyType, Double> typeWeightMap;
-	@Nullable private transient Map<CppNode, Double> weightMap;
+	@Nullable private transient volatile Map<DependencyType, Double> typeWeightMap;
+	@Nullable private transient volatile Map<CppNode, Double> weightMap;
+	@Nullable private transient Map<Set<DependencyType>, ReachabilityIndex> reachabilityIndices;
 
 	ProjectVersion(@Nonnull String versionName, @Nonnull List<String> projectFiles,
 			@Nonnull List<String> includePaths, @Nonnull RootNode rootNode,
 			@Nonnull double[] typeWeights, @Nonnull double[] weights) {
+		this(versionName, projectFiles, includePaths, rootNode, typeWeights, weights, null);
+	}
+
+	ProjectVersion(@Nonnull String versionName, @Nonnull List<String> projectFiles,
+			@Nonnull List<String> includePaths, @Nonnull RootNode rootNode,
+			@Nonnull double[] typeWeights, @Nonnull double[] weights, @Nullable FileOriginTable fileOrigins) {
 		this.versionName = versionName;
 		this.projectFiles = List.copyOf(projectFiles);
 		this.includePaths = List.copyOf(includePaths);
 		this.rootNode = rootNode;
 		this.typeWeights = typeWeights.clone();
 		this.weights = weights.clone();
+		this.nodeIndex = new NodeIndex(rootNode);
+		this.fileOrigins = fileOrigins;
 	}
 
 	@Nonnull
@@ -46,6 +66,8 @@ public final class ProjectVersion implements Serializable {
 		final ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
 		try {
 			return (ProjectVersion) objectInputStream.readObject();
+		} catch (InvalidClassException e) {
+			throw new IOException("Input file was saved in an older, unsupported format!", e);
 		} catch (ClassNotFoundException | ClassCastException e) {
 			throw new IOException("Wrong input file format!", e);
 		}
@@ -77,8 +99,47 @@ public final class ProjectVersion implements Serializable {
 		return rootNode;
 	}
 
+	/**
+	 * Get the name lookup index of the nodes of this version.
+	 *
+	 * @return the node index
+	 */
+	@Nonnull
+	public NodeIndex getNodeIndex() {
+		return nodeIndex;
+	}
+
+	/**
+	 * Get the source files the nodes of this version come from.
+	 *
+	 * @return the origin table, null if the version was not built from source files
+	 */
+	@Nullable
+	public FileOriginTable getFileOrigins() {
+		return fileOrigins;
+	}
+
+	/**
+	 * Get the transitive dependency index of this version for some dependency types. The index is built on first use
+	 * and kept for later queries with the same types.
+	 *
+	 * @param types the dependency types to follow
+	 * @return the reachability index
+	 */
+	@Nonnull
+	public synchronized ReachabilityIndex getReachabilityIndex(@Nonnull Set<DependencyType> types) {
+		if (reachabilityIndices == null) this.reachabilityIndices = new HashMap<>();
+		final Set<DependencyType> key = types.isEmpty() ? Set.of() : EnumSet.copyOf(types);
+		final ReachabilityIndex index = reachabilityIndices.get(key);
+		if (index != null) return index;
+		final ReachabilityIndex newIndex = new ReachabilityIndex(rootNode.getDependencyGraph(), key);
+		reachabilityIndices.put(key, newIndex);
+		return newIndex;
+	}
+
 	@Nonnull
 	public Map<DependencyType, Double> getDependencyTypeWeightMap() {
+		final Map<DependencyType, Double> typeWeightMap = this.typeWeightMap;
 		if (typeWeightMap != null) return typeWeightMap;
 		final Map<DependencyType, Double> map = new EnumMap<>(DependencyType.class);
 		for (final DependencyType type : DependencyType.values()) map.put(type, typeWeights[type.ordinal()]);
@@ -87,6 +148,7 @@ public final class ProjectVersion implements Serializable {
 
 	@Nonnull
 	public Map<CppNode, Double> getWeightMap() {
+		final Map<CppNode, Double> weightMap = this.weightMap;
 		if (weightMap != null) return weightMap;
 		final Map<CppNode, Double> map = new IdentityHashMap<>();
 		map.put(rootNode, weights[0]); // root id == 0
@@ -0,0 +1,367 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyGraph;
+import mrmathami.cia.cpp.ast.DependencyType;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Transitive dependency index of a locked tree, restricted to some dependency types. A node depends on another node
+ * if there is a path of one or more dependencies of those types from the first node to the second one.
+ * <p>
+ * The strongly connected components of the dependency graph are condensed into a DAG, numbered in reverse topological
+ * order, and labelled with {@value #TRAVERSALS} post-order intervals from differently ordered traversals. A component
+ * can only reach components with a smaller number whose intervals are nested in its own, so most negative queries are
+ * answered without a search, and the rest search only the components that pass both checks.
+ */
+public final class ReachabilityIndex {
+	private static final int TRAVERSALS = 2;
+	private static final int INITIAL_STACK_SIZE = 16;
+
+	@Nonnull private final DependencyGraph graph;
+	@Nonnull private final Set<DependencyType> types;
+
+	@Nonnull private final int[] components; // node id -> component
+	@Nonnull private final boolean[] cyclic; // component -> has a cycle
+	@Nonnull private final int[] memberOffsets;
+	@Nonnull private final int[] memberIds;
+	@Nonnull private final int[] toOffsets;
+	@Nonnull private final int[] toComponents;
+	@Nonnull private final int[] fromOffsets;
+	@Nonnull private final int[] fromComponents;
+	@Nonnull private final int[][] lows;
+	@Nonnull private final int[][] ranks;
+
+	ReachabilityIndex(@Nonnull DependencyGraph graph, @Nonnull Set<DependencyType> types) {
+		this.graph = graph;
+		this.types = Set.copyOf(types);
+
+		final int nodeCount = graph.getNodeCount();
+		final DependencyType[] typeArray = types.toArray(DependencyType[]::new);
+		final int[] nodeOffsets = new int[nodeCount + 1];
+		final int[] nodeTargets = new int[graph.getDependencyCount()];
+		int edgeCount = 0;
+		for (int id = 0; id < nodeCount; id++) {
+			for (int index = graph.getDependencyToStart(id); index < graph.getDependencyToEnd(id); index++) {
+				for (final DependencyType type : typeArray) {
+					if (graph.getDependencyToCount(index, type) > 0) {
+						nodeTargets[edgeCount++] = graph.getDependencyToId(index);
+						break;
+					}
+				}
+			}
+			nodeOffsets[id + 1] = edgeCount;
+		}
+
+		this.components = new int[nodeCount];
+		final int componentCount = strongConnect(nodeOffsets, nodeTargets, components);
+
+		// members of each component, in id order
+		this.memberOffsets = new int[componentCount + 1];
+		for (final int component : components) memberOffsets[component + 1] += 1;
+		for (int component = 0; component < componentCount; component++) {
+			memberOffsets[component + 1] += memberOffsets[component];
+		}
+		this.memberIds = new int[nodeCount];
+		final int[] positions = Arrays.copyOf(memberOffsets, componentCount);
+		for (int id = 0; id < nodeCount; id++) memberIds[positions[components[id]]++] = id;
+
+		// condensed edges, without duplicates, a component with an edge inside itself is cyclic
+		this.cyclic = new boolean[componentCount];
+		this.toOffsets = new int[componentCount + 1];
+		final int[] condensed = new int[edgeCount];
+		final int[] lastSeen = new int[componentCount];
+		Arrays.fill(lastSeen, -1);
+		int condensedCount = 0;
+		for (int component = 0; component < componentCount; component++) {
+			for (int member = memberOffsets[component]; member < memberOffsets[component + 1]; member++) {
+				final int id = memberIds[member];
+				for (int edge = nodeOffsets[id]; edge < nodeOffsets[id + 1]; edge++) {
+					final int target = components[nodeTargets[edge]];
+					if (target == component) {
+						cyclic[component] = true;
+					} else if (lastSeen[target] != component) {
+						lastSeen[target] = component;
+						condensed[condensedCount++] = target;
+					}
+				}
+			}
+			toOffsets[component + 1] = condensedCount;
+		}
+		this.toComponents = Arrays.copyOf(condensed, condensedCount);
+
+		this.fromOffsets = new int[componentCount + 1];
+		for (final int target : toComponents) fromOffsets[target + 1] += 1;
+		for (int component = 0; component < componentCount; component++) {
+			fromOffsets[component + 1] += fromOffsets[component];
+		}
+		this.fromComponents = new int[condensedCount];
+		final int[] fromPositions = Arrays.copyOf(fromOffsets, componentCount);
+		for (int component = 0; component < componentCount; component++) {
+			for (int edge = toOffsets[component]; edge < toOffsets[component + 1]; edge++) {
+				fromComponents[fromPositions[toComponents[edge]]++] = component;
+			}
+		}
+
+		this.lows = new int[TRAVERSALS][];
+		this.ranks = new int[TRAVERSALS][];
+		for (int traversal = 0; traversal < TRAVERSALS; traversal++) {
+			final int[] low = new int[componentCount];
+			final int[] rank = new int[componentCount];
+			label(traversal % 2 != 0, low, rank);
+			lows[traversal] = low;
+			ranks[traversal] = rank;
+		}
+	}
+
+	/**
+	 * Iterative Tarjan's algorithm. Components are numbered in the order they are completed, which is a reverse
+	 * topological order of the condensed graph.
+	 *
+	 * @return the component count
+	 */
+	private static int strongConnect(@Nonnull int[] offsets, @Nonnull int[] targets, @Nonnull int[] components) {
+		final int nodeCount = components.length;
+		final int[] indices = new int[nodeCount];
+		final int[] lowLinks = new int[nodeCount];
+		final int[] nextEdges = new int[nodeCount];
+		final int[] callStack = new int[nodeCount];
+		final int[] stack = new int[nodeCount];
+		final boolean[] onStack = new boolean[nodeCount];
+		Arrays.fill(indices, -1);
+		int index = 0;
+		int stackSize = 0;
+		int componentCount = 0;
+		for (int start = 0; start < nodeCount; start++) {
+			if (indices[start] >= 0) continue;
+			int callSize = 0;
+			callStack[callSize++] = start;
+			indices[start] = lowLinks[start] = index++;
+			nextEdges[start] = offsets[start];
+			stack[stackSize++] = start;
+			onStack[start] = true;
+			while (callSize > 0) {
+				final int id = callStack[callSize - 1];
+				if (nextEdges[id] < offsets[id + 1]) {
+					final int target = targets[nextEdges[id]++];
+					if (indices[target] < 0) {
+						callStack[callSize++] = target;
+						indices[target] = lowLinks[target] = index++;
+						nextEdges[target] = offsets[target];
+						stack[stackSize++] = target;
+						onStack[target] = true;
+					} else if (onStack[target] && indices[target] < lowLinks[id]) {
+						lowLinks[id] = indices[target];
+					}
+					continue;
+				}
+				callSize -= 1;
+				if (callSize > 0) {
+					final int parent = callStack[callSize - 1];
+					if (lowLinks[id] < lowLinks[parent]) lowLinks[parent] = lowLinks[id];
+				}
+				if (lowLinks[id] == indices[id]) {
+					int member;
+					do {
+						member = stack[--stackSize];
+						onStack[member] = false;
+						components[member] = componentCount;
+					} while (member != id);
+					componentCount += 1;
+				}
+			}
+		}
+		return componentCount;
+	}
+
+	/**
+	 * Post-order interval labelling of the condensed graph. If component {@code a} reaches component {@code b}, the
+	 * interval {@code [low[b], rank[b]]} is inside the interval {@code [low[a], rank[a]]}.
+	 */
+	private void label(boolean reversed, @Nonnull int[] low, @Nonnull int[] rank) {
+		final int componentCount = low.length;
+		final boolean[] visited = new boolean[componentCount];
+		final int[] callStack = new int[componentCount];
+		final int[] nextEdges = new int[componentCount];
+		int nextRank = 0;
+		for (int index = 0; index < componentCount; index++) {
+			// sources first, so every traversal starts from the top of the DAG
+			final int start = reversed ? index : componentCount - 1 - index;
+			if (visited[start] || fromOffsets[start] != fromOffsets[start + 1]) continue;
+			int callSize = 0;
+			callStack[callSize++] = start;
+			visited[start] = true;
+			nextEdges[start] = 0;
+			low[start] = Integer.MAX_VALUE;
+			while (callSize > 0) {
+				final int component = callStack[callSize - 1];
+				final int edgeStart = toOffsets[component];
+				final int edgeCount = toOffsets[component + 1] - edgeStart;
+				if (nextEdges[component] < edgeCount) {
+					final int next = nextEdges[component]++;
+					final int target = toComponents[reversed ? edgeStart + edgeCount - 1 - next : edgeStart + next];
+					if (!visited[target]) {
+						visited[target] = true;
+						nextEdges[target] = 0;
+						low[target] = Integer.MAX_VALUE;
+						callStack[callSize++] = target;
+					} else if (low[target] < low[component]) {
+						low[component] = low[target];
+					}
+					continue;
+				}
+				callSize -= 1;
+				rank[component] = nextRank++;
+				if (rank[component] < low[component]) low[component] = rank[component];
+				if (callSize > 0) {
+					final int parent = callStack[callSize - 1];
+					if (low[component] < low[parent]) low[parent] = low[component];
+				}
+			}
+		}
+	}
+
+	private boolean mayReach(int component, int target) {
+		if (component <= target) return false;
+		for (int traversal = 0; traversal < TRAVERSALS; traversal++) {
+			final int[] low = lows[traversal];
+			final int[] rank = ranks[traversal];
+			if (low[target] < low[component] || rank[target] > rank[component]) return false;
+		}
+		return true;
+	}
+
+	private int getComponent(@Nonnull CppNode node) {
+		final int id = node.getId();
+		if (id < 0 || id >= components.length || graph.getNode(id) != node) {
+			throw new IllegalArgumentException("Node is not in the indexed tree!");
+		}
+		return components[id];
+	}
+
+	/**
+	 * @return the dependency types this index follows
+	 */
+	@Nonnull
+	public Set<DependencyType> getDependencyTypes() {
+		return types;
+	}
+
+	/**
+	 * Check if a node transitively depends on another node.
+	 *
+	 * @param node the depending node
+	 * @param dependency the node depended on
+	 * @return true if there is a path of dependencies from the first node to the second one
+	 */
+	public boolean dependsOn(@Nonnull CppNode node, @Nonnull CppNode dependency) {
+		final int component = getComponent(node);
+		final int target = getComponent(dependency);
+		if (component == target) return cyclic[component];
+		if (!mayReach(component, target)) return false;
+
+		final BitSet visited = new BitSet();
+		int[] stack = new int[INITIAL_STACK_SIZE];
+		int stackSize = 0;
+		stack[stackSize++] = component;
+		visited.set(component);
+		while (stackSize > 0) {
+			final int current = stack[--stackSize];
+			for (int edge = toOffsets[current]; edge < toOffsets[current + 1]; edge++) {
+				final int next = toComponents[edge];
+				if (next == target) return true;
+				if (!visited.get(next) && mayReach(next, target)) {
+					visited.set(next);
+					if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+					stack[stackSize++] = next;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get all nodes that the node transitively depends on.
+	 *
+	 * @param node the node
+	 * @return read-only list of nodes, in id order
+	 */
+	@Nonnull
+	public List<CppNode> getAllDependencies(@Nonnull CppNode node) {
+		return collect(getComponent(node), toOffsets, toComponents);
+	}
+
+	/**
+	 * Get all nodes that transitively depend on the node.
+	 *
+	 * @param node the node
+	 * @return read-only list of nodes, in id order
+	 */
+	@Nonnull
+	public List<CppNode> getAllDependents(@Nonnull CppNode node) {
+		return collect(getComponent(node), fromOffsets, fromComponents);
+	}
+
+	@Nonnull
+	private List<CppNode> collect(int component, @Nonnull int[] offsets, @Nonnull int[] edges) {
+		final BitSet visited = new BitSet();
+		int[] stack = new int[INITIAL_STACK_SIZE];
+		int stackSize = 0;
+		// the node's own component is only included if it is on a cycle
+		if (cyclic[component]) visited.set(component);
+		stack[stackSize++] = component;
+		while (stackSize > 0) {
+			final int current = stack[--stackSize];
+			for (int edge = offsets[current]; edge < offsets[current + 1]; edge++) {
+				final int next = edges[edge];
+				if (!visited.get(next)) {
+					visited.set(next);
+					if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+					stack[stackSize++] = next;
+				}
+			}
+		}
+
+		int count = 0;
+		for (int next = visited.nextSetBit(0); next >= 0; next = visited.nextSetBit(next + 1)) {
+			count += memberOffsets[next + 1] - memberOffsets[next];
+		}
+		final int[] ids = new int[count];
+		int index = 0;
+		for (int next = visited.nextSetBit(0); next >= 0; next = visited.nextSetBit(next + 1)) {
+			for (int member = memberOffsets[next]; member < memberOffsets[next + 1]; member++) {
+				ids[index++] = memberIds[member];
+			}
+		}
+		Arrays.sort(ids);
+		return new NodeList(graph, ids);
+	}
+
+	private static final class NodeList extends AbstractList<CppNode> implements RandomAccess {
+		@Nonnull private final DependencyGraph graph;
+		@Nonnull private final int[] ids;
+
+		NodeList(@Nonnull DependencyGraph graph, @Nonnull int[] ids) {
+			this.graph = graph;
+			this.ids = ids;
+		}
+
+		@Nonnull
+		@Override
+		public CppNode get(int index) {
+			return graph.getNode(ids[index]);
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+	}
+}
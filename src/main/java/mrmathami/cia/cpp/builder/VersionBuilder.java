@@ -2,10 +2,12 @@ package mrmathami.cia.cpp.builder;
 
 import mrmathami.annotations.Nonnull;
 import mrmathami.cia.cpp.CppException;
-import mrmathami.cia.cpp.ast.CppNode;
-import mrmathami.cia.cpp.ast.DependencyMap;
+import mrmathami.cia.cpp.ast.BodyStorage;
+import mrmathami.cia.cpp.ast.DependencyGraph;
 import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.GraphStorage;
 import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.ast.SymbolTable;
 import org.eclipse.cdt.core.dom.ast.IASTTranslationUnit;
 
 import java.io.IOException;
@@ -16,6 +18,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 public final class VersionBuilder {
 	@Nonnull public static final Map<DependencyType, Double> WEIGHT_MAP = Map.of(
@@ -75,17 +78,19 @@ public final class VersionBuilder {
 
 	@Nonnull
 	private static double[] calculateWeights(@Nonnull double[] weightMap, @Nonnull RootNode rootNode) {
-		final double[] weights = new double[rootNode.getNodeCount()];
-		for (final CppNode node : rootNode) {
+		final DependencyGraph graph = rootNode.getDependencyGraph();
+		final int nodeCount = graph.getNodeCount();
+		final double[] weights = new double[nodeCount];
+		IntStream.range(1, nodeCount).parallel().forEach(id -> {
 			double directWeight = 0.0;
-			for (final CppNode dependencyNode : node.getAllDependencyFrom()) {
-				final DependencyMap dependencyMap = node.getNodeDependencyFrom(dependencyNode);
+			final int end = graph.getDependencyFromEnd(id);
+			for (int index = graph.getDependencyFromStart(id); index < end; index++) {
 				for (final DependencyType type : DependencyType.values) {
-					directWeight += weightMap[type.ordinal()] * dependencyMap.getCount(type);
+					directWeight += weightMap[type.ordinal()] * graph.getDependencyFromCount(index, type);
 				}
 			}
-			weights[node.getId()] = directWeight;
-		}
+			weights[id] = directWeight;
+		});
 		return weights;
 	}
 
@@ -93,6 +98,32 @@ public final class VersionBuilder {
 	public static ProjectVersion build(@Nonnull String versionName, @Nonnull Path projectRoot,
 			@Nonnull List<Path> projectFiles, @Nonnull List<Path> includePaths,
 			@Nonnull Map<DependencyType, Double> dependencyTypeWeightMap) throws CppException {
+		return build(versionName, projectRoot, projectFiles, includePaths, dependencyTypeWeightMap, BodyStorage.STRING);
+	}
+
+	@Nonnull
+	public static ProjectVersion build(@Nonnull String versionName, @Nonnull Path projectRoot,
+			@Nonnull List<Path> projectFiles, @Nonnull List<Path> includePaths,
+			@Nonnull Map<DependencyType, Double> dependencyTypeWeightMap, @Nonnull BodyStorage bodyStorage)
+			throws CppException {
+		return build(versionName, projectRoot, projectFiles, includePaths, dependencyTypeWeightMap, bodyStorage,
+				GraphStorage.HEAP);
+	}
+
+	@Nonnull
+	public static ProjectVersion build(@Nonnull String versionName, @Nonnull Path projectRoot,
+			@Nonnull List<Path> projectFiles, @Nonnull List<Path> includePaths,
+			@Nonnull Map<DependencyType, Double> dependencyTypeWeightMap, @Nonnull BodyStorage bodyStorage,
+			@Nonnull GraphStorage graphStorage) throws CppException {
+		return build(versionName, projectRoot, projectFiles, includePaths, dependencyTypeWeightMap, bodyStorage,
+				graphStorage, new SymbolTable());
+	}
+
+	@Nonnull
+	public static ProjectVersion build(@Nonnull String versionName, @Nonnull Path projectRoot,
+			@Nonnull List<Path> projectFiles, @Nonnull List<Path> includePaths,
+			@Nonnull Map<DependencyType, Double> dependencyTypeWeightMap, @Nonnull BodyStorage bodyStorage,
+			@Nonnull GraphStorage graphStorage, @Nonnull SymbolTable symbolTable) throws CppException {
 		try {
 			final List<Path> projectFileList = createPathList(projectFiles);
 			final List<Path> externalIncludePaths = createPathList(includePaths);
@@ -100,10 +131,12 @@ public final class VersionBuilder {
 			final List<Path> includePathList = combinePathList(externalIncludePaths, internalIncludePaths);
 			final Path projectRootPath = projectRoot.toRealPath(LinkOption.NOFOLLOW_LINKS);
 
+			final FileOriginTable.Builder origins = new FileOriginTable.Builder(projectRootPath);
 			final char[] fileContentCharArray
-					= PreprocessorBuilder.build(projectRootPath, projectFileList, includePathList, false);
+					= PreprocessorBuilder.build(projectRootPath, projectFileList, includePathList, false, origins);
 			final IASTTranslationUnit translationUnit = TranslationUnitBuilder.build(fileContentCharArray);
-			final RootNode root = AstBuilder.build(translationUnit);
+			final RootNode root = AstBuilder.build(translationUnit, bodyStorage, graphStorage, symbolTable, origins);
+			final FileOriginTable fileOrigins = origins.build(root);
 
 			final List<String> projectFilePaths = createRelativePathStrings(projectFileList, projectRootPath);
 			final List<String> projectIncludePaths = createRelativePathStrings(externalIncludePaths, projectRootPath);
@@ -113,7 +146,8 @@ public final class VersionBuilder {
 			for (final DependencyType type : types) typeWeights[type.ordinal()] = dependencyTypeWeightMap.get(type);
 
 			final double[] weights = calculateWeights(typeWeights, root);
-			return new ProjectVersion(versionName, projectFilePaths, projectIncludePaths, root, typeWeights, weights);
+			return new ProjectVersion(versionName, projectFilePaths, projectIncludePaths, root, typeWeights, weights,
+					fileOrigins);
 		} catch (IOException e) {
 			throw new CppException("Error when trying to build project!", e);
 		}
@@ -0,0 +1,21 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.CppNode;
+
+import java.io.IOException;
+
+/**
+ * Receives the result of a comparison as it is determined, see
+ * {@link VersionDiffer#compare(mrmathami.cia.cpp.builder.ProjectVersion, mrmathami.cia.cpp.builder.ProjectVersion,
+ * java.util.Map, int, DifferenceSink)}.
+ */
+public interface DifferenceSink {
+	void removedNode(@Nonnull CppNode nodeA) throws IOException;
+
+	void changedNode(@Nonnull CppNode nodeA, @Nonnull CppNode nodeB) throws IOException;
+
+	void addedNode(@Nonnull CppNode nodeB) throws IOException;
+
+	void impactWeight(@Nonnull CppNode nodeB, double weight) throws IOException;
+}
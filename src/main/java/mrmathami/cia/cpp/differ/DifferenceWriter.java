@@ -0,0 +1,92 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.CppNode;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Write the result of a comparison as text, one line per record, with tab separated fields:
+ * <pre>
+ * -	idA	uniqueName	signature
+ * *	idA	idB	uniqueName	signature
+ * +	idB	uniqueName	signature
+ * =	idB	weight
+ * </pre>
+ * The ids are the node ids of the versions, the signatures are empty for the nodes without one. A backslash, tab,
+ * carriage return or line feed in a name or a signature is written as {@code \\}, {@code \t}, {@code \r} or
+ * {@code \n}, so every record stays on one line and keeps its fields.
+ */
+public final class DifferenceWriter implements DifferenceSink, Closeable {
+	@Nonnull private final Writer writer;
+
+	public DifferenceWriter(@Nonnull Writer writer) {
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+	}
+
+	@Override
+	public void removedNode(@Nonnull CppNode nodeA) throws IOException {
+		writer.write("-\t");
+		writer.write(Integer.toString(nodeA.getId()));
+		writeName(nodeA);
+	}
+
+	@Override
+	public void changedNode(@Nonnull CppNode nodeA, @Nonnull CppNode nodeB) throws IOException {
+		writer.write("*\t");
+		writer.write(Integer.toString(nodeA.getId()));
+		writer.write('\t');
+		writer.write(Integer.toString(nodeB.getId()));
+		writeName(nodeB);
+	}
+
+	@Override
+	public void addedNode(@Nonnull CppNode nodeB) throws IOException {
+		writer.write("+\t");
+		writer.write(Integer.toString(nodeB.getId()));
+		writeName(nodeB);
+	}
+
+	@Override
+	public void impactWeight(@Nonnull CppNode nodeB, double weight) throws IOException {
+		writer.write("=\t");
+		writer.write(Integer.toString(nodeB.getId()));
+		writer.write('\t');
+		writer.write(Double.toString(weight));
+		writer.write('\n');
+	}
+
+	private void writeName(@Nonnull CppNode node) throws IOException {
+		writer.write('\t');
+		writeEscaped(node.getUniqueName());
+		writer.write('\t');
+		writeEscaped(node.getSignature());
+		writer.write('\n');
+	}
+
+	private void writeEscaped(@Nonnull String string) throws IOException {
+		int start = 0;
+		for (int index = 0; index < string.length(); index++) {
+			final char c = string.charAt(index);
+			final char escape = c == '\\' ? '\\' : c == '\t' ? 't' : c == '\r' ? 'r' : c == '\n' ? 'n' : 0;
+			if (escape == 0) continue;
+			writer.write(string, start, index - start);
+			writer.write('\\');
+			writer.write(escape);
+			start = index + 1;
+		}
+		writer.write(string, start, string.length() - start);
+	}
+
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,84 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.NodeTable;
+import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.builder.FileOriginTable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The nodes of two versions left to compare when the unchanged files are skipped. A node that only comes from
+ * unchanged files is settled: it is paired with the settled node of the other version with the same similar
+ * fingerprint, names and origin, and taken as unchanged without being compared. The other nodes, and the settled nodes
+ * without such a pair, are in the scope.
+ */
+final class FileScope {
+	@Nonnull final BitSet scopeA;
+	@Nonnull final BitSet scopeB;
+	@Nonnull final int[] counterparts; // id of the settled pair in version A of each node of version B, -1 if none
+
+	private FileScope(int nodeCountA, int nodeCountB) {
+		this.scopeA = new BitSet(nodeCountA);
+		this.scopeB = new BitSet(nodeCountB);
+		this.counterparts = new int[nodeCountB];
+		Arrays.fill(counterparts, -1);
+	}
+
+	@Nonnull
+	static FileScope of(@Nonnull RootNode rootA, @Nonnull FileOriginTable originsA, @Nonnull RootNode rootB,
+			@Nonnull FileOriginTable originsB) {
+		final NodeTable tableA = rootA.getNodeTable();
+		final NodeTable tableB = rootB.getNodeTable();
+		final int nodeCountA = tableA.getNodeCount();
+		final int nodeCountB = tableB.getNodeCount();
+		final FileScope scope = new FileScope(nodeCountA, nodeCountB);
+		final Set<String> changedFiles = originsA.getChangedFiles(originsB);
+		final CppNode.Matcher matcher = new CppNode.Matcher();
+
+		// the settled nodes of version B by similar fingerprint, -1 if the fingerprint is not unique
+		final Map<Long, Integer> settledIds = new HashMap<>();
+		for (int idB = 0; idB < nodeCountB; idB++) {
+			final CppNode nodeB = tableB.getNode(idB);
+			if (originsB.isFromUnchangedFiles(nodeB, changedFiles)) {
+				settledIds.merge(matcher.nodeFingerprint(nodeB, CppNode.MatchLevel.SIMILAR), idB, (id, other) -> -1);
+			} else {
+				scope.scopeB.set(idB);
+			}
+		}
+
+		for (int idA = 0; idA < nodeCountA; idA++) {
+			final CppNode nodeA = tableA.getNode(idA);
+			if (originsA.isFromUnchangedFiles(nodeA, changedFiles)) {
+				final Integer idB = settledIds.get(matcher.nodeFingerprint(nodeA, CppNode.MatchLevel.SIMILAR));
+				if (idB != null && idB >= 0 && scope.counterparts[idB] < 0) {
+					final CppNode nodeB = tableB.getNode(idB);
+					if (isSettledPair(nodeA, originsA, nodeB, originsB)) {
+						scope.counterparts[idB] = idA;
+						continue;
+					}
+				}
+			}
+			scope.scopeA.set(idA);
+		}
+
+		for (int idB = scope.scopeB.nextClearBit(0); idB < nodeCountB; idB = scope.scopeB.nextClearBit(idB + 1)) {
+			if (scope.counterparts[idB] < 0) scope.scopeB.set(idB);
+		}
+		return scope;
+	}
+
+	private static boolean isSettledPair(@Nonnull CppNode nodeA, @Nonnull FileOriginTable originsA,
+			@Nonnull CppNode nodeB, @Nonnull FileOriginTable originsB) {
+		return nodeA.getClass() == nodeB.getClass()
+				&& nodeA.getName().equals(nodeB.getName())
+				&& nodeA.getUniqueName().equals(nodeB.getUniqueName())
+				&& nodeA.getSignature().equals(nodeB.getSignature())
+				&& originsA.isSameOrigin(nodeA, originsB, nodeB);
+	}
+}
@@ -0,0 +1,20 @@
+package mrmathami.cia.cpp.differ;
+
+/**
+ * How the impact weights of a comparison are calculated. The impact weight of a node is the chance that a change
+ * reaches it through a path of dependencies from a changed node, every link passing the change with the impact weight
+ * of its dependency types.
+ */
+public enum ImpactEngine {
+	/**
+	 * Enumerate every simple path up to the max depth from every changed node. Exact, but the number of paths grows
+	 * exponentially with the depth on dense graphs.
+	 */
+	PATHS,
+	/**
+	 * Propagate the weights from all changed nodes at once, one level of links at a time, in O(depth * links). The
+	 * paths of the same length to a node are merged and may revisit nodes, so the weights are an approximation of
+	 * {@link #PATHS}. See the README for a comparison.
+	 */
+	PROPAGATION
+}
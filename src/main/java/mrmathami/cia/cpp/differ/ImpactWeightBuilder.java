@@ -3,7 +3,7 @@ package mrmathami.cia.cpp.differ;
 import mrmathami.annotations.Nonnull;
 import mrmathami.cia.cpp.CppException;
 import mrmathami.cia.cpp.ast.CppNode;
-import mrmathami.cia.cpp.ast.DependencyMap;
+import mrmathami.cia.cpp.ast.DependencyGraph;
 import mrmathami.cia.cpp.ast.DependencyType;
 import mrmathami.cia.cpp.ast.RootNode;
 
@@ -14,23 +14,25 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
-import java.util.function.Function;
 
 final class ImpactWeightBuilder {
 	private static final double THRESHOLD = 0x1.0p-128;
 
+	@Nonnull private final DependencyGraph graph;
+	@Nonnull private final double[] linkWeights;
 	@Nonnull private final List<CppNode> changedNodes;
 	@Nonnull private final double[] changedWeights;
 	@Nonnull private final BitSet changedPathSet;
-	@Nonnull private final double[] dependencyWeights;
 	private final int maxDepth;
 
-	private ImpactWeightBuilder(@Nonnull List<CppNode> changedNodes, @Nonnull double[] changedWeights,
-			@Nonnull BitSet changedPathSet, @Nonnull double[] dependencyWeights, int maxDepth) {
+	private ImpactWeightBuilder(@Nonnull DependencyGraph graph, @Nonnull double[] linkWeights,
+			@Nonnull List<CppNode> changedNodes, @Nonnull double[] changedWeights, @Nonnull BitSet changedPathSet,
+			int maxDepth) {
+		this.graph = graph;
+		this.linkWeights = linkWeights;
 		this.changedNodes = changedNodes;
 		this.changedWeights = changedWeights;
 		this.changedPathSet = changedPathSet;
-		this.dependencyWeights = dependencyWeights;
 		this.maxDepth = maxDepth;
 	}
 
@@ -50,10 +52,102 @@ final class ImpactWeightBuilder {
 			changedPathSet.set(changedId);
 		}
 
-		return new ImpactWeightBuilder(changedNodes, changedWeights, changedPathSet, dependencyWeights, maxDepth)
+		final DependencyGraph graph = rootNode.getDependencyGraph();
+		final double[] linkWeights = linkWeights(graph, dependencyWeights);
+		return new ImpactWeightBuilder(graph, linkWeights, changedNodes, changedWeights, changedPathSet, maxDepth)
 				.build();
 	}
 
+	/**
+	 * Calculate the impact weights level by level, see {@link ImpactEngine#PROPAGATION}. The links from the changed
+	 * nodes are paths of their own, so the first level is exact. On the next levels, the sum and the sum of squares of
+	 * the weights of the paths of the same length reaching a node are propagated, both are linear in the link weights.
+	 * The paths are then taken as that many paths of equal weight: {@code S * S / Q} paths of weight {@code Q / S}.
+	 * This is exact for a single path and for paths of equal weights.
+	 */
+	@Nonnull
+	static double[] propagate(@Nonnull double[] dependencyWeights, @Nonnull RootNode rootNode,
+			@Nonnull List<CppNode> changedNodes, int maxDepth) {
+		final int nodeCount = rootNode.getNodeCount();
+
+		final double[] weights = new double[nodeCount];
+		if (changedNodes.isEmpty()) return weights;
+
+		final BitSet changedSet = new BitSet(nodeCount);
+		for (final CppNode changedNode : changedNodes) changedSet.set(changedNode.getId());
+
+		final DependencyGraph graph = rootNode.getDependencyGraph();
+		final double[] linkWeights = linkWeights(graph, dependencyWeights);
+
+		// the chance that no path reaches a node, as the weights
+		Arrays.fill(weights, 1.0);
+		double[] sums = new double[nodeCount];
+		double[] squareSums = new double[nodeCount];
+		double[] nextSums = new double[nodeCount];
+		double[] nextSquareSums = new double[nodeCount];
+		for (int id = changedSet.nextSetBit(0); id >= 0; id = changedSet.nextSetBit(id + 1)) {
+			final int end = graph.getDependencyFromEnd(id);
+			for (int index = graph.getDependencyFromStart(id); index < end; index++) {
+				final int nextId = graph.getDependencyFromId(index);
+				if (changedSet.get(nextId)) continue;
+				final double linkWeight = linkWeights[index];
+				weights[nextId] *= 1.0 - linkWeight;
+				sums[nextId] += linkWeight;
+				squareSums[nextId] += linkWeight * linkWeight;
+			}
+		}
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			Arrays.fill(nextSums, 0.0);
+			Arrays.fill(nextSquareSums, 0.0);
+			for (int id = 0; id < nodeCount; id++) {
+				final double sum = sums[id];
+				if (sum < THRESHOLD) continue;
+				final double squareSum = squareSums[id];
+				final int end = graph.getDependencyFromEnd(id);
+				for (int index = graph.getDependencyFromStart(id); index < end; index++) {
+					final int nextId = graph.getDependencyFromId(index);
+					if (changedSet.get(nextId)) continue;
+					final double linkWeight = linkWeights[index];
+					nextSums[nextId] += sum * linkWeight;
+					nextSquareSums[nextId] += squareSum * linkWeight * linkWeight;
+				}
+			}
+			for (int id = 0; id < nodeCount; id++) {
+				final double sum = nextSums[id];
+				if (sum <= 0.0) continue;
+				final double squareSum = nextSquareSums[id];
+				weights[id] *= Math.pow(1.0 - squareSum / sum, sum * sum / squareSum);
+			}
+			final double[] swapSums = sums;
+			sums = nextSums;
+			nextSums = swapSums;
+			final double[] swapSquareSums = squareSums;
+			squareSums = nextSquareSums;
+			nextSquareSums = swapSquareSums;
+		}
+
+		for (int id = 0; id < nodeCount; id++) weights[id] = changedSet.get(id) ? 1.0 : 1.0 - weights[id];
+		return weights;
+	}
+
+	@Nonnull
+	private static double[] linkWeights(@Nonnull DependencyGraph graph, @Nonnull double[] dependencyWeights) {
+		final int nodeCount = graph.getNodeCount();
+		final double[] linkWeights = new double[graph.getDependencyCount()];
+		for (int id = 0; id < nodeCount; id++) {
+			final int end = graph.getDependencyFromEnd(id);
+			for (int index = graph.getDependencyFromStart(id); index < end; index++) {
+				double linkWeight = 1.0;
+				for (final DependencyType type : DependencyType.values) {
+					linkWeight *= Math.pow(1.0 - dependencyWeights[type.ordinal()],
+							graph.getDependencyFromCount(index, type));
+				}
+				linkWeights[index] = 1.0 - linkWeight;
+			}
+		}
+		return linkWeights;
+	}
+
 	@Nonnull
 	private double[] build() throws CppException {
 		try {
@@ -69,14 +163,6 @@ final class ImpactWeightBuilder {
 		}
 	}
 
-	private static double linkWeight(@Nonnull DependencyMap dependencyMap, @Nonnull double[] dependencyWeights) {
-		double linkWeight = 1.0;
-		for (final DependencyType type : DependencyType.values) {
-			linkWeight *= Math.pow(1.0 - dependencyWeights[type.ordinal()], dependencyMap.getCount(type));
-		}
-		return 1.0 - linkWeight;
-	}
-
 	@Nonnull
 	private static double[] reduceWeights(@Nonnull double[] weightsA, @Nonnull double[] weightsB) {
 		assert weightsA.length == weightsB.length;
@@ -109,37 +195,27 @@ final class ImpactWeightBuilder {
 		}
 
 		@Nonnull
-		private double[] calculate(@Nonnull CppNode node) {
-			return new Function<CppNode, double[]>() {
-				@Nonnull private final double[] weights = changedWeights.clone();
-				@Nonnull private final BitSet pathSet = (BitSet) changedPathSet.clone();
-
-				private void recursiveCalculate(@Nonnull CppNode currentNode, double currentWeight, int depth) {
-					for (final CppNode nextNode : currentNode.getAllDependencyFrom()) {
-						final int nextId = nextNode.getId();
-						if (pathSet.get(nextId)) continue;
-						final DependencyMap dependencyMap = currentNode.getNodeDependencyFrom(nextNode);
-						final double nextWeight = currentWeight * linkWeight(dependencyMap, dependencyWeights);
-						weights[nextId] *= 1.0 - nextWeight;
-						if (depth < maxDepth && nextWeight >= THRESHOLD) {
-							pathSet.set(nextId);
-							recursiveCalculate(nextNode, nextWeight, depth + 1);
-							pathSet.clear(nextId);
-						}
-					}
-				}
-
-				@Nonnull
-				@Override
-				public double[] apply(@Nonnull CppNode changedNode) {
-					//System.err.println("Thread " + Thread.currentThread().getId() + " START " + changedNode);
-
-					recursiveCalculate(changedNode, 1.0, 0);
+		private double[] calculate(@Nonnull CppNode changedNode) {
+			final double[] weights = changedWeights.clone();
+			final BitSet pathSet = (BitSet) changedPathSet.clone();
+			recursiveCalculate(weights, pathSet, changedNode.getId(), 1.0, 0);
+			return weights;
+		}
 
-					//System.err.println("Thread " + Thread.currentThread().getId() + " END " + changedNode);
-					return weights;
+		private void recursiveCalculate(@Nonnull double[] weights, @Nonnull BitSet pathSet, int currentId,
+				double currentWeight, int depth) {
+			final int end = graph.getDependencyFromEnd(currentId);
+			for (int index = graph.getDependencyFromStart(currentId); index < end; index++) {
+				final int nextId = graph.getDependencyFromId(index);
+				if (pathSet.get(nextId)) continue;
+				final double nextWeight = currentWeight * linkWeights[index];
+				weights[nextId] *= 1.0 - nextWeight;
+				if (depth < maxDepth && nextWeight >= THRESHOLD) {
+					pathSet.set(nextId);
+					recursiveCalculate(weights, pathSet, nextId, nextWeight, depth + 1);
+					pathSet.clear(nextId);
 				}
-			}.apply(node);
+			}
 		}
 	}
 }
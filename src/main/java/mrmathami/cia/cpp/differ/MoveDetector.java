@@ -0,0 +1,260 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.Fingerprint;
+import mrmathami.cia.cpp.ast.IBodyContainer;
+import mrmathami.cia.cpp.ast.ITypeContainer;
+import mrmathami.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pair the removed nodes with the added nodes they were most likely moved or renamed to. The content of a node is the
+ * set of its features: the token trigrams of its body, its type and its dependency targets. Nodes of the same kind
+ * whose feature sets have a Jaccard similarity of at least {@link #SIMILARITY} are counterparts.
+ * <p>
+ * Candidates are found by locality-sensitive hashing: the MinHash signatures of the feature sets are cut into bands,
+ * and two nodes are candidates if any of their bands are equal. With 16 bands of 4 rows, nodes of similarity 0.8 are
+ * candidates with probability above 0.999, nodes of similarity 0.3 with probability below 0.13. The candidates are
+ * then checked with the exact similarity, and paired greedily from the most similar ones. Nodes with too few features
+ * are never paired. Overfull buckets, like the one of the many copies of a trivial body, are skipped, so their nodes
+ * only become candidates through their other bands.
+ */
+final class MoveDetector {
+	private static final double SIMILARITY = 0.75;
+	private static final int MIN_FEATURES = 4;
+	private static final int BANDS = 16;
+	private static final int ROWS = 4;
+	private static final int MAX_BUCKET_SIZE = 32;
+	@Nonnull private static final long[] SEEDS = createSeeds(BANDS * ROWS);
+
+	private MoveDetector() {
+	}
+
+	@Nonnull
+	private static long[] createSeeds(int count) {
+		final long[] seeds = new long[count];
+		long seed = 0x9E3779B97F4A7C15L;
+		for (int index = 0; index < count; index++) seeds[index] = Fingerprint.mix(seed += 0x9E3779B97F4A7C15L);
+		return seeds;
+	}
+
+	/**
+	 * Move the removed and added nodes of a matching that are counterparts to its moved nodes. The added nodes of the
+	 * moved pairs stay in the changed list of version B.
+	 *
+	 * @param matching the matching
+	 */
+	static void detect(@Nonnull VersionDiffer.Matching matching) {
+		if (matching.removedNodes.isEmpty() || matching.addedNodes.isEmpty()) return;
+
+		final long[][] featuresA = features(matching.removedNodes);
+		final Map<Long, List<Integer>> buckets = new HashMap<>();
+		for (int indexA = 0; indexA < featuresA.length; indexA++) {
+			final long[] signature = signature(featuresA[indexA]);
+			if (signature == null) continue;
+			final Class<?> kind = matching.removedNodes.get(indexA).getClass();
+			for (int band = 0; band < BANDS; band++) {
+				buckets.computeIfAbsent(bucketKey(kind, signature, band), any -> new ArrayList<>()).add(indexA);
+			}
+		}
+
+		final long[][] featuresB = features(matching.addedNodes);
+		final List<Candidate> candidates = new ArrayList<>();
+		for (int indexB = 0; indexB < featuresB.length; indexB++) {
+			final long[] signature = signature(featuresB[indexB]);
+			if (signature == null) continue;
+			final Class<?> kind = matching.addedNodes.get(indexB).getClass();
+			final Set<Integer> checked = new HashSet<>();
+			for (int band = 0; band < BANDS; band++) {
+				final List<Integer> bucket = buckets.get(bucketKey(kind, signature, band));
+				if (bucket == null || bucket.size() > MAX_BUCKET_SIZE) continue;
+				for (final int indexA : bucket) {
+					// most candidates share many bands, check each of them once
+					if (!checked.add(indexA)) continue;
+					final double similarity = similarity(featuresA[indexA], featuresB[indexB]);
+					if (similarity >= SIMILARITY) candidates.add(new Candidate(indexA, indexB, similarity));
+				}
+			}
+		}
+		if (candidates.isEmpty()) return;
+
+		// the most similar pairs first, then the input order, so the result is deterministic
+		candidates.sort((candidateA, candidateB) -> {
+			final int compare = Double.compare(candidateB.similarity, candidateA.similarity);
+			if (compare != 0) return compare;
+			return candidateA.indexA != candidateB.indexA
+					? Integer.compare(candidateA.indexA, candidateB.indexA)
+					: Integer.compare(candidateA.indexB, candidateB.indexB);
+		});
+		final boolean[] pairedA = new boolean[featuresA.length];
+		final boolean[] pairedB = new boolean[featuresB.length];
+		for (final Candidate candidate : candidates) {
+			if (pairedA[candidate.indexA] || pairedB[candidate.indexB]) continue;
+			pairedA[candidate.indexA] = true;
+			pairedB[candidate.indexB] = true;
+			matching.movedNodes.add(Pair.immutableOf(matching.removedNodes.get(candidate.indexA),
+					matching.addedNodes.get(candidate.indexB)));
+		}
+		removePaired(matching.removedNodes, pairedA);
+		removePaired(matching.addedNodes, pairedB);
+	}
+
+	private static void removePaired(@Nonnull List<CppNode> nodes, @Nonnull boolean[] paired) {
+		int size = 0;
+		for (int index = 0; index < nodes.size(); index++) {
+			if (!paired[index]) nodes.set(size++, nodes.get(index));
+		}
+		nodes.subList(size, nodes.size()).clear();
+	}
+
+	//region Features
+
+	/**
+	 * @return the sorted feature hashes of each node
+	 */
+	@Nonnull
+	private static long[][] features(@Nonnull List<CppNode> nodes) {
+		final long[][] features = new long[nodes.size()][];
+		for (int index = 0; index < features.length; index++) features[index] = features(nodes.get(index));
+		return features;
+	}
+
+	@Nonnull
+	private static long[] features(@Nonnull CppNode node) {
+		long[] features = new long[16];
+		int size = 0;
+		final String body = node instanceof IBodyContainer ? ((IBodyContainer) node).getBody() : null;
+		if (body != null) {
+			final long[] tokens = tokens(body);
+			if (tokens.length < 3) {
+				features = Arrays.copyOf(tokens, Math.max(tokens.length, features.length));
+				size = tokens.length;
+			}
+			for (int index = 2; index < tokens.length; index++) {
+				if (size == features.length) features = Arrays.copyOf(features, size * 2);
+				features[size++]
+						= Fingerprint.mix(tokens[index - 2] * 31 * 31 + tokens[index - 1] * 31 + tokens[index]);
+			}
+		}
+		final CppNode type = node instanceof ITypeContainer ? ((ITypeContainer) node).getType() : null;
+		if (type != null) {
+			if (size == features.length) features = Arrays.copyOf(features, size * 2);
+			features[size++] = Fingerprint.mix(Fingerprint.hash(type.getUniqueName()) ^ 0x5479706500000000L);
+		}
+		for (final CppNode target : node.getAllDependencyTo()) {
+			if (size == features.length) features = Arrays.copyOf(features, size * 2);
+			features[size++] = Fingerprint.mix(Fingerprint.hash(target.getUniqueName()) ^ 0x446570656E640000L);
+		}
+		// a set, so the repeated features count once
+		Arrays.sort(features, 0, size);
+		int count = 0;
+		for (int index = 0; index < size; index++) {
+			if (count == 0 || features[count - 1] != features[index]) features[count++] = features[index];
+		}
+		return Arrays.copyOf(features, count);
+	}
+
+	/**
+	 * Split a body into identifiers, numbers and single symbols, ignoring the white spaces.
+	 *
+	 * @return the token hashes
+	 */
+	@Nonnull
+	private static long[] tokens(@Nonnull String body) {
+		long[] tokens = new long[16];
+		int size = 0;
+		int index = 0;
+		while (index < body.length()) {
+			final char c = body.charAt(index);
+			if (Character.isWhitespace(c)) {
+				index += 1;
+				continue;
+			}
+			int end = index + 1;
+			if (Character.isLetterOrDigit(c) || c == '_') {
+				while (end < body.length()
+						&& (Character.isLetterOrDigit(body.charAt(end)) || body.charAt(end) == '_')) {
+					end += 1;
+				}
+			}
+			if (size == tokens.length) tokens = Arrays.copyOf(tokens, size * 2);
+			tokens[size++] = Fingerprint.hash(body.substring(index, end));
+			index = end;
+		}
+		return Arrays.copyOf(tokens, size);
+	}
+
+	/**
+	 * Get the Jaccard similarity of the feature sets of two nodes.
+	 *
+	 * @param nodeA the first node
+	 * @param nodeB the second node
+	 * @return the similarity
+	 */
+	static double similarity(@Nonnull CppNode nodeA, @Nonnull CppNode nodeB) {
+		return similarity(features(nodeA), features(nodeB));
+	}
+
+	private static double similarity(@Nonnull long[] featuresA, @Nonnull long[] featuresB) {
+		int common = 0;
+		int indexA = 0;
+		int indexB = 0;
+		while (indexA < featuresA.length && indexB < featuresB.length) {
+			final int compare = Long.compare(featuresA[indexA], featuresB[indexB]);
+			if (compare == 0) common += 1;
+			if (compare <= 0) indexA += 1;
+			if (compare >= 0) indexB += 1;
+		}
+		return (double) common / (featuresA.length + featuresB.length - common);
+	}
+
+	//endregion Features
+
+	//region MinHash
+
+	/**
+	 * @return the MinHash signature of the features, null if there are too few of them
+	 */
+	@Nullable
+	private static long[] signature(@Nonnull long[] features) {
+		if (features.length < MIN_FEATURES) return null;
+		final long[] signature = new long[SEEDS.length];
+		Arrays.fill(signature, Long.MAX_VALUE);
+		for (final long feature : features) {
+			for (int index = 0; index < SEEDS.length; index++) {
+				final long value = Fingerprint.mix(feature ^ SEEDS[index]);
+				if (value < signature[index]) signature[index] = value;
+			}
+		}
+		return signature;
+	}
+
+	private static long bucketKey(@Nonnull Class<?> kind, @Nonnull long[] signature, int band) {
+		long key = Fingerprint.mix(Fingerprint.hash(kind.getName()) + band);
+		for (int row = band * ROWS; row < band * ROWS + ROWS; row++) key = Fingerprint.mix(key ^ signature[row]);
+		return key;
+	}
+
+	//endregion MinHash
+
+	private static final class Candidate {
+		private final int indexA;
+		private final int indexB;
+		private final double similarity;
+
+		Candidate(int indexA, int indexB, double similarity) {
+			this.indexA = indexA;
+			this.indexB = indexB;
+			this.similarity = similarity;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
+import mrmathami.cia.cpp.CppException;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.IntegralNode;
+import mrmathami.cia.cpp.ast.MatchPartition;
+import mrmathami.cia.cpp.ast.NodeTable;
+import mrmathami.cia.cpp.builder.ProjectVersion;
+import mrmathami.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A differ over the version history of a project. Every node of every version gets an identity, shared by the similar
+ * nodes of all versions, and a content id, shared by the identical nodes. Both relations are equivalences, so the
+ * difference of any two versions of the chain is read from the ids, without matching any node again.
+ * <p>
+ * Adding a version matches its nodes against the nodes of the previous versions once, with the identical classes of
+ * the last version and the new one computed by {@link MatchPartition}. The identities are kept as similar
+ * fingerprints and a node of each identity, the matcher of an added version is dropped when it is added. The results
+ * of {@link #compare} are the same as the results of {@link VersionDiffer#compare} without move detection.
+ */
+public final class VersionChain {
+	@Nonnull private final List<ChainVersion> versions = new ArrayList<>();
+	@Nonnull private final Map<Long, int[]> identityMap = new HashMap<>(); // identities of each similar fingerprint
+	@Nonnull private final List<CppNode> identityNodes = new ArrayList<>(); // a node of each identity
+	@Nonnull private final List<int[]> identityContents = new ArrayList<>(); // content ids of each identity
+	@Nonnull private final List<CppNode> contentNodes = new ArrayList<>(); // a node of each content id
+
+	public VersionChain() {
+	}
+
+	/**
+	 * Create a chain of some versions, in history order.
+	 *
+	 * @param versions the versions
+	 */
+	public VersionChain(@Nonnull List<ProjectVersion> versions) {
+		for (final ProjectVersion version : versions) addVersion(version);
+	}
+
+	/**
+	 * Add the next version to the chain.
+	 *
+	 * @param version the version
+	 * @return the index of the version in the chain
+	 */
+	public synchronized int addVersion(@Nonnull ProjectVersion version) {
+		final ChainVersion lastVersion = versions.isEmpty() ? null : versions.get(versions.size() - 1);
+		final NodeTable table = version.getRootNode().getNodeTable();
+		final NodeTable lastTable = lastVersion != null ? lastVersion.version.getRootNode().getNodeTable() : null;
+		final MatchPartition partition = lastVersion != null
+				? MatchPartition.of(lastVersion.version.getRootNode(), version.getRootNode())
+				: null;
+		final CppNode.Matcher matcher = new CppNode.Matcher();
+
+		final int nodeCount = table.getNodeCount();
+		final int[] identities = new int[nodeCount];
+		final int[] contents = new int[nodeCount];
+		for (int id = 0; id < nodeCount; id++) {
+			// the root node is kept, the integral nodes are skipped, same as the differ
+			if (table.isNodeClass(id, IntegralNode.class)) {
+				identities[id] = -1;
+				contents[id] = -1;
+				continue;
+			}
+			final CppNode node = table.getNode(id);
+			final int oldIdentity = findIdentity(node, matcher);
+			if (oldIdentity < 0) {
+				final int identity = identityNodes.size();
+				identityMap.merge(matcher.nodeFingerprint(node, CppNode.MatchLevel.SIMILAR), new int[]{identity},
+						VersionChain::append);
+				identityNodes.add(node);
+				identities[id] = identity;
+				identityContents.add(new int[]{contentNodes.size()});
+				contents[id] = contentNodes.size();
+				contentNodes.add(node);
+				continue;
+			}
+
+			final int identity = oldIdentity;
+			identities[id] = identity;
+			contents[id] = findContent(node, identity, lastVersion, lastTable, partition, matcher);
+		}
+
+		final int[] identityIds = new int[identityNodes.size()];
+		Arrays.fill(identityIds, -1);
+		for (int id = 0; id < nodeCount; id++) {
+			if (identities[id] >= 0) identityIds[identities[id]] = id;
+		}
+		versions.add(new ChainVersion(version, identities, contents, identityIds));
+		return versions.size() - 1;
+	}
+
+	private int findIdentity(@Nonnull CppNode node, @Nonnull CppNode.Matcher matcher) {
+		final int[] identities = identityMap.get(matcher.nodeFingerprint(node, CppNode.MatchLevel.SIMILAR));
+		if (identities != null) {
+			for (final int identity : identities) {
+				if (matcher.isNodeMatch(identityNodes.get(identity), node, CppNode.MatchLevel.SIMILAR)) return identity;
+			}
+		}
+		return -1;
+	}
+
+	@Nonnull
+	private static int[] append(@Nonnull int[] array, @Nonnull int[] values) {
+		final int[] newArray = Arrays.copyOf(array, array.length + values.length);
+		System.arraycopy(values, 0, newArray, array.length, values.length);
+		return newArray;
+	}
+
+	private int findContent(@Nonnull CppNode node, int identity, @Nullable ChainVersion lastVersion,
+			@Nullable NodeTable lastTable, @Nullable MatchPartition partition, @Nonnull CppNode.Matcher matcher) {
+		// most nodes are the same as in the last version
+		int lastContent = -1;
+		if (lastVersion != null) {
+			final int lastId = lastVersion.getNodeId(identity);
+			if (lastId >= 0) {
+				assert lastTable != null && partition != null;
+				lastContent = lastVersion.contents[lastId];
+				if (partition.isNodeMatch(lastTable.getNode(lastId), node, CppNode.MatchLevel.IDENTICAL)) {
+					return lastContent;
+				}
+			}
+		}
+		// then the contents of the older versions
+		final int[] contents = identityContents.get(identity);
+		for (final int content : contents) {
+			if (content != lastContent
+					&& matcher.isNodeMatch(contentNodes.get(content), node, CppNode.MatchLevel.IDENTICAL)) {
+				return content;
+			}
+		}
+		final int newContent = contentNodes.size();
+		contentNodes.add(node);
+		final int[] newContents = Arrays.copyOf(contents, contents.length + 1);
+		newContents[contents.length] = newContent;
+		identityContents.set(identity, newContents);
+		return newContent;
+	}
+
+	public synchronized int getVersionCount() {
+		return versions.size();
+	}
+
+	@Nonnull
+	public synchronized ProjectVersion getVersion(int index) {
+		return versions.get(index).version;
+	}
+
+	/**
+	 * Compare two versions of the chain, in any order.
+	 *
+	 * @param indexA the index of the old version
+	 * @param indexB the index of the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @return the difference
+	 * @throws CppException if the impact weights cannot be calculated
+	 */
+	@Nonnull
+	public VersionDifference compare(int indexA, int indexB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth) throws CppException {
+		final ChainVersion versionA;
+		final ChainVersion versionB;
+		synchronized (this) {
+			versionA = versions.get(indexA);
+			versionB = versions.get(indexB);
+		}
+		final NodeTable tableA = versionA.version.getRootNode().getNodeTable();
+		final NodeTable tableB = versionB.version.getRootNode().getNodeTable();
+
+		final VersionDiffer.Matching matching = new VersionDiffer.Matching();
+		for (int idA = 0; idA < versionA.identities.length; idA++) {
+			final int identity = versionA.identities[idA];
+			if (identity < 0) continue;
+			final CppNode nodeA = tableA.getNode(idA);
+			final int idB = versionB.getNodeId(identity);
+			if (idB < 0) {
+				matching.removedNodes.add(nodeA);
+				continue;
+			}
+			final CppNode nodeB = tableB.getNode(idB);
+			if (versionA.contents[idA] == versionB.contents[idB]) {
+				matching.unchangedNodes.add(Pair.immutableOf(nodeA, nodeB));
+			} else {
+				matching.changedNodes.add(Pair.immutableOf(nodeA, nodeB));
+				matching.changedListB.add(nodeB);
+			}
+		}
+		for (int idB = 0; idB < versionB.identities.length; idB++) {
+			final int identity = versionB.identities[idB];
+			if (identity >= 0 && versionA.getNodeId(identity) < 0) {
+				final CppNode nodeB = tableB.getNode(idB);
+				matching.addedNodes.add(nodeB);
+				matching.changedListB.add(nodeB);
+			}
+		}
+
+		return VersionDiffer.createDifference(versionA.version, versionB.version, matching,
+				dependencyTypeImpactWeightMap, maxDepth, ImpactEngine.PATHS);
+	}
+
+	private static final class ChainVersion {
+		@Nonnull private final ProjectVersion version;
+		@Nonnull private final int[] identities; // identity of each node id, -1 if skipped
+		@Nonnull private final int[] contents; // content id of each node id, -1 if skipped
+		@Nonnull private final int[] identityNodes; // node id of each identity known when added, -1 if none
+
+		ChainVersion(@Nonnull ProjectVersion version, @Nonnull int[] identities, @Nonnull int[] contents,
+				@Nonnull int[] identityNodes) {
+			this.version = version;
+			this.identities = identities;
+			this.contents = contents;
+			this.identityNodes = identityNodes;
+		}
+
+		int getNodeId(int identity) {
+			return identity < identityNodes.length ? identityNodes[identity] : -1;
+		}
+	}
+}
@@ -1,20 +1,28 @@
 package mrmathami.cia.cpp.differ;
 
 import mrmathami.annotations.Nonnull;
+import mrmathami.annotations.Nullable;
 import mrmathami.cia.cpp.CppException;
 import mrmathami.cia.cpp.ast.CppNode;
 import mrmathami.cia.cpp.ast.DependencyType;
 import mrmathami.cia.cpp.ast.IntegralNode;
+import mrmathami.cia.cpp.ast.MatchPartition;
+import mrmathami.cia.cpp.ast.NodeTable;
 import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.builder.FileOriginTable;
 import mrmathami.cia.cpp.builder.ProjectVersion;
 import mrmathami.utils.Pair;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public final class VersionDiffer {
 	@Nonnull public static final Map<DependencyType, Double> IMPACT_WEIGHT_MAP = Map.of(
@@ -25,79 +33,418 @@ public final class VersionDiffer {
 			DependencyType.OVERRIDE, 0.7128108
 	);
 
+	private static final int STREAM_BATCH_SIZE = 65536;
+
 	private VersionDiffer() {
 	}
 
 	@Nonnull
 	public static VersionDifference compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
 			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth) throws CppException {
-		final RootNode rootA = versionA.getRootNode();
-		final RootNode rootB = versionB.getRootNode();
+		return compare(versionA, versionB, dependencyTypeImpactWeightMap, maxDepth, false);
+	}
 
-		final CppNode.Matcher matcher = new CppNode.Matcher();
+	/**
+	 * Compare two versions. If unchanged files are skipped and both versions know the origin files of their nodes, a
+	 * node that comes from the same files with the same preprocessed content in both versions is taken as unchanged
+	 * without being compared. Such nodes are paired by their similar fingerprints in one pass, and only the other nodes
+	 * and the nodes they refer to are partitioned and matched, so the matching cost scales with the changed files. A
+	 * change that only reaches such a node through a declaration in another file, e.g. a renamed callee, then shows up
+	 * in the impact weights instead of as a changed node.
+	 *
+	 * @param versionA the old version
+	 * @param versionB the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @param skipUnchangedFiles skip the nodes of unchanged files
+	 * @return the difference
+	 * @throws CppException if the versions cannot be compared
+	 */
+	@Nonnull
+	public static VersionDifference compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth,
+			boolean skipUnchangedFiles) throws CppException {
+		return compare(versionA, versionB, dependencyTypeImpactWeightMap, maxDepth, skipUnchangedFiles, false);
+	}
 
-		final Map<CppNode.Wrapper, CppNode> nodeMapA = new HashMap<>();
-		final Map<CppNode.Wrapper, CppNode> nodeMapB = new HashMap<>();
-		nodeMapA.put(new CppNode.Wrapper(rootA, CppNode.MatchLevel.SIMILAR, matcher), rootA);
-		nodeMapB.put(new CppNode.Wrapper(rootB, CppNode.MatchLevel.SIMILAR, matcher), rootB);
-		for (final CppNode nodeA : rootA) {
-			if (!(nodeA instanceof IntegralNode)) {
-				final CppNode.Wrapper wrapper = new CppNode.Wrapper(nodeA, CppNode.MatchLevel.SIMILAR, matcher);
-				final CppNode node = nodeMapA.put(wrapper, nodeA);
-				if (node != null) {
-					throw new AssertionError();
-				}
-			}
-		}
-		for (final CppNode nodeB : rootB) {
-			if (!(nodeB instanceof IntegralNode)) {
-				final CppNode.Wrapper wrapper = new CppNode.Wrapper(nodeB, CppNode.MatchLevel.SIMILAR, matcher);
-				final CppNode node = nodeMapB.put(wrapper, nodeB);
-				if (node != null) {
-					throw new AssertionError();
-				}
-			}
+	/**
+	 * Compare two versions, see {@link #compare(ProjectVersion, ProjectVersion, Map, int, boolean)}. If moves are
+	 * detected, a removed node and an added node of the same kind with mostly the same body and dependencies are
+	 * reported as a moved or renamed node instead, see {@link VersionDifference#getMovedNodes()}.
+	 *
+	 * @param versionA the old version
+	 * @param versionB the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @param skipUnchangedFiles skip the nodes of unchanged files
+	 * @param detectMoves pair the removed nodes with the added nodes they were moved or renamed to
+	 * @return the difference
+	 * @throws CppException if the versions cannot be compared
+	 */
+	@Nonnull
+	public static VersionDifference compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth,
+			boolean skipUnchangedFiles, boolean detectMoves) throws CppException {
+		return compare(versionA, versionB, dependencyTypeImpactWeightMap, maxDepth, skipUnchangedFiles, detectMoves,
+				ImpactEngine.PATHS);
+	}
+
+	/**
+	 * Compare two versions, see {@link #compare(ProjectVersion, ProjectVersion, Map, int, boolean, boolean)}, with the
+	 * impact weights calculated by an engine.
+	 *
+	 * @param versionA the old version
+	 * @param versionB the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @param skipUnchangedFiles skip the nodes of unchanged files
+	 * @param detectMoves pair the removed nodes with the added nodes they were moved or renamed to
+	 * @param impactEngine the engine of the impact weights
+	 * @return the difference
+	 * @throws CppException if the versions cannot be compared
+	 */
+	@Nonnull
+	public static VersionDifference compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth,
+			boolean skipUnchangedFiles, boolean detectMoves, @Nonnull ImpactEngine impactEngine) throws CppException {
+		final Comparison comparison = Comparison.of(versionA, versionB, skipUnchangedFiles);
+		final Matching matching;
+		try {
+			final ForkJoinTask<Matching> matchingTaskA
+					= ForkJoinPool.commonPool().submit(comparison.matchingTask(true));
+			final Matching matchingB = ForkJoinPool.commonPool().submit(comparison.matchingTask(false)).get();
+			matching = matchingTaskA.get().merge(matchingB);
+		} catch (final InterruptedException | ExecutionException exception) {
+			throw new CppException("Cannot compare versions!", exception);
 		}
+		comparison.addSettledNodes(matching);
 
-		final Set<CppNode> addedNodes = new HashSet<>();
-		final Set<Pair<CppNode, CppNode>> changedNodes = new HashSet<>();
-		final Set<Pair<CppNode, CppNode>> unchangedNodes = new HashSet<>();
-		final Set<CppNode> removedNodes = new HashSet<>();
+		if (detectMoves) MoveDetector.detect(matching);
+		return createDifference(versionA, versionB, matching, dependencyTypeImpactWeightMap, maxDepth, impactEngine);
+	}
 
-		final List<CppNode> changedListB = new LinkedList<>();
+	/**
+	 * Compare two versions and write the result to a sink as it is determined, instead of keeping the classified nodes
+	 * in a {@link VersionDifference}. The removed and changed nodes come first, then the added nodes, then the impact
+	 * weights of all nodes of version B, in id order. Unchanged nodes are not written.
+	 * <p>
+	 * The nodes are classified the same way as {@link #compare(ProjectVersion, ProjectVersion, Map, int)}, a batch of
+	 * nodes at a time, so the classified nodes held at once are bounded by the batch size. The node maps, the match
+	 * partition and the impact weights of the versions are still built in full, so the memory stays linear in the node
+	 * count of the versions.
+	 *
+	 * @param versionA the old version
+	 * @param versionB the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @param sink the sink to write the result to
+	 * @throws CppException if the versions cannot be compared, or the sink fails
+	 */
+	public static void compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth,
+			@Nonnull DifferenceSink sink) throws CppException {
+		compare(versionA, versionB, dependencyTypeImpactWeightMap, maxDepth, false, ImpactEngine.PATHS, sink);
+	}
 
-		for (final CppNode.Wrapper wrapperA : nodeMapA.keySet()) {
-			final CppNode nodeA = wrapperA.getNode();
-			final CppNode nodeB = nodeMapB.get(wrapperA);
-			if (nodeB != null) {
-				if (matcher.isNodeMatch(nodeA, nodeB, CppNode.MatchLevel.IDENTICAL)) {
-					unchangedNodes.add(Pair.immutableOf(nodeA, nodeB));
-				} else {
-					changedNodes.add(Pair.immutableOf(nodeA, nodeB));
-					changedListB.add(nodeB);
+	/**
+	 * Compare two versions and write the result to a sink, see
+	 * {@link #compare(ProjectVersion, ProjectVersion, Map, int, DifferenceSink)}, with the impact weights calculated
+	 * by an engine.
+	 *
+	 * @param versionA the old version
+	 * @param versionB the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @param impactEngine the engine of the impact weights
+	 * @param sink the sink to write the result to
+	 * @throws CppException if the versions cannot be compared, or the sink fails
+	 */
+	public static void compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth,
+			@Nonnull ImpactEngine impactEngine, @Nonnull DifferenceSink sink) throws CppException {
+		compare(versionA, versionB, dependencyTypeImpactWeightMap, maxDepth, false, impactEngine, sink);
+	}
+
+	/**
+	 * Compare two versions and write the result to a sink, see
+	 * {@link #compare(ProjectVersion, ProjectVersion, Map, int, DifferenceSink)}, skipping the nodes of unchanged
+	 * files as {@link #compare(ProjectVersion, ProjectVersion, Map, int, boolean)} does. Moves are not detected, as
+	 * that needs all the removed and added nodes at once.
+	 *
+	 * @param versionA the old version
+	 * @param versionB the new version
+	 * @param dependencyTypeImpactWeightMap the impact weights of the dependency types
+	 * @param maxDepth the max depth of the impact paths
+	 * @param skipUnchangedFiles skip the nodes of unchanged files
+	 * @param impactEngine the engine of the impact weights
+	 * @param sink the sink to write the result to
+	 * @throws CppException if the versions cannot be compared, or the sink fails
+	 */
+	public static void compare(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap, int maxDepth,
+			boolean skipUnchangedFiles, @Nonnull ImpactEngine impactEngine, @Nonnull DifferenceSink sink)
+			throws CppException {
+		final Comparison comparison = Comparison.of(versionA, versionB, skipUnchangedFiles);
+		final NodeTable tableB = versionB.getRootNode().getNodeTable();
+		final BitSet changedSetB = new BitSet(tableB.getNodeCount());
+		try {
+			for (int start = 0; start < comparison.nodesA.length; start += STREAM_BATCH_SIZE) {
+				final Matching matching = ForkJoinPool.commonPool().submit(comparison.matchingTask(true, start,
+						Math.min(start + STREAM_BATCH_SIZE, comparison.nodesA.length))).get();
+				for (final CppNode nodeA : matching.removedNodes) sink.removedNode(nodeA);
+				for (final Pair<CppNode, CppNode> pair : matching.changedNodes) {
+					sink.changedNode(pair.getA(), pair.getB());
+					changedSetB.set(pair.getB().getId());
 				}
-			} else {
-				removedNodes.add(nodeA);
 			}
-		}
-		for (final CppNode.Wrapper wrapperB : nodeMapB.keySet()) {
-			final CppNode nodeA = nodeMapA.get(wrapperB);
-			final CppNode nodeB = wrapperB.getNode();
-			if (nodeA == null) {
-				addedNodes.add(nodeB);
-				changedListB.add(nodeB);
+			for (int start = 0; start < comparison.nodesB.length; start += STREAM_BATCH_SIZE) {
+				final Matching matching = ForkJoinPool.commonPool().submit(comparison.matchingTask(false, start,
+						Math.min(start + STREAM_BATCH_SIZE, comparison.nodesB.length))).get();
+				for (final CppNode nodeB : matching.addedNodes) {
+					sink.addedNode(nodeB);
+					changedSetB.set(nodeB.getId());
+				}
 			}
+
+			final List<CppNode> changedListB = new ArrayList<>(changedSetB.cardinality());
+			for (int id = changedSetB.nextSetBit(0); id >= 0; id = changedSetB.nextSetBit(id + 1)) {
+				changedListB.add(tableB.getNode(id));
+			}
+			final double[] impactWeights = calculateImpactWeights(typeImpactWeights(dependencyTypeImpactWeightMap),
+					versionB.getRootNode(), changedListB, maxDepth, impactEngine);
+			for (int idB = 0; idB < impactWeights.length; idB++) {
+				sink.impactWeight(tableB.getNode(idB), impactWeights[idB]);
+			}
+		} catch (final InterruptedException | ExecutionException exception) {
+			throw new CppException("Cannot compare versions!", exception);
+		} catch (final IOException exception) {
+			throw new CppException("Cannot write the difference!", exception);
 		}
+	}
 
+	@Nonnull
+	private static double[] typeImpactWeights(@Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap) {
 		final DependencyType[] types = DependencyType.values();
 		final double[] typeImpactWeights = new double[types.length];
 		for (final DependencyType type : types) {
 			typeImpactWeights[type.ordinal()] = dependencyTypeImpactWeightMap.get(type);
 		}
+		return typeImpactWeights;
+	}
+
+	@Nonnull
+	private static double[] calculateImpactWeights(@Nonnull double[] typeImpactWeights, @Nonnull RootNode rootNode,
+			@Nonnull List<CppNode> changedNodes, int maxDepth, @Nonnull ImpactEngine impactEngine)
+			throws CppException {
+		return impactEngine == ImpactEngine.PROPAGATION
+				? ImpactWeightBuilder.propagate(typeImpactWeights, rootNode, changedNodes, maxDepth)
+				: ImpactWeightBuilder.calculate(typeImpactWeights, rootNode, changedNodes, maxDepth);
+	}
+
+	@Nonnull
+	static VersionDifference createDifference(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+			@Nonnull Matching matching, @Nonnull Map<DependencyType, Double> dependencyTypeImpactWeightMap,
+			int maxDepth, @Nonnull ImpactEngine impactEngine) throws CppException {
+		final double[] typeImpactWeights = typeImpactWeights(dependencyTypeImpactWeightMap);
+		final double[] impactWeights = calculateImpactWeights(typeImpactWeights, versionB.getRootNode(),
+				matching.changedListB, maxDepth, impactEngine);
+
+		return new VersionDifference(versionA, versionB, matching, typeImpactWeights, impactWeights, maxDepth);
+	}
+
+	/**
+	 * The nodes of a version to match, in id order: the nodes in the scope, or all nodes if there is no scope. The root
+	 * node is kept, the integral nodes are skipped.
+	 */
+	@Nonnull
+	private static CppNode[] createNodes(@Nonnull RootNode rootNode, @Nullable BitSet scope) {
+		final NodeTable table = rootNode.getNodeTable();
+		final BitSet ids = scope != null ? scope : new BitSet(table.getNodeCount());
+		if (scope == null) ids.set(0, table.getNodeCount());
+		final List<CppNode> nodes = new ArrayList<>(ids.cardinality());
+		for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+			if (!table.isNodeClass(id, IntegralNode.class)) nodes.add(table.getNode(id));
+		}
+		return nodes.toArray(CppNode[]::new);
+	}
+
+	@Nonnull
+	private static Map<CppNode.Wrapper, CppNode> createNodeMap(@Nonnull CppNode[] nodes) {
+		final CppNode.Matcher matcher = new CppNode.Matcher();
+		final Map<CppNode.Wrapper, CppNode> nodeMap = new HashMap<>(nodes.length * 4 / 3 + 1);
+		for (final CppNode node : nodes) {
+			final CppNode.Wrapper wrapper = new CppNode.Wrapper(node, CppNode.MatchLevel.SIMILAR, matcher);
+			if (nodeMap.put(wrapper, node) != null) {
+				throw new AssertionError();
+			}
+		}
+		return nodeMap;
+	}
 
-		final double[] impactWeights = ImpactWeightBuilder.calculate(typeImpactWeights, rootB, changedListB, maxDepth);
+	/**
+	 * The classified nodes of a comparison. The changed list of version B holds the changed, moved and added nodes of
+	 * version B, the nodes the impact weights start from.
+	 */
+	static final class Matching {
+		@Nonnull final List<CppNode> addedNodes = new ArrayList<>();
+		@Nonnull final List<Pair<CppNode, CppNode>> changedNodes = new ArrayList<>();
+		@Nonnull final List<Pair<CppNode, CppNode>> unchangedNodes = new ArrayList<>();
+		@Nonnull final List<CppNode> removedNodes = new ArrayList<>();
+		@Nonnull final List<Pair<CppNode, CppNode>> movedNodes = new ArrayList<>();
+		@Nonnull final List<CppNode> changedListB = new ArrayList<>();
+
+		@Nonnull
+		Matching merge(@Nonnull Matching matching) {
+			addedNodes.addAll(matching.addedNodes);
+			changedNodes.addAll(matching.changedNodes);
+			unchangedNodes.addAll(matching.unchangedNodes);
+			removedNodes.addAll(matching.removedNodes);
+			movedNodes.addAll(matching.movedNodes);
+			changedListB.addAll(matching.changedListB);
+			return this;
+		}
+	}
+
+	/**
+	 * The nodes of two versions to match, their node maps and their match partition. If the unchanged files are
+	 * skipped, these only hold the nodes in the scope, see {@link FileScope}.
+	 */
+	private static final class Comparison {
+		@Nonnull private final RootNode rootA;
+		@Nonnull private final RootNode rootB;
+		@Nullable private final FileScope scope;
+		@Nonnull private final CppNode[] nodesA;
+		@Nonnull private final CppNode[] nodesB;
+		@Nonnull private final Map<CppNode.Wrapper, CppNode> nodeMapA;
+		@Nonnull private final Map<CppNode.Wrapper, CppNode> nodeMapB;
+		@Nonnull private final MatchPartition partition;
+
+		private Comparison(@Nonnull RootNode rootA, @Nonnull RootNode rootB, @Nullable FileScope scope,
+				@Nonnull CppNode[] nodesA, @Nonnull CppNode[] nodesB, @Nonnull Map<CppNode.Wrapper, CppNode> nodeMapA,
+				@Nonnull Map<CppNode.Wrapper, CppNode> nodeMapB, @Nonnull MatchPartition partition) {
+			this.rootA = rootA;
+			this.rootB = rootB;
+			this.scope = scope;
+			this.nodesA = nodesA;
+			this.nodesB = nodesB;
+			this.nodeMapA = nodeMapA;
+			this.nodeMapB = nodeMapB;
+			this.partition = partition;
+		}
+
+		@Nonnull
+		static Comparison of(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
+				boolean skipUnchangedFiles) throws CppException {
+			final RootNode rootA = versionA.getRootNode();
+			final RootNode rootB = versionB.getRootNode();
+			final FileOriginTable originsA = skipUnchangedFiles ? versionA.getFileOrigins() : null;
+			final FileOriginTable originsB = skipUnchangedFiles ? versionB.getFileOrigins() : null;
+			final FileScope scope = originsA != null && originsB != null
+					? FileScope.of(rootA, originsA, rootB, originsB)
+					: null;
+			try {
+				// the identical classes of both trees are computed once, instead of matching every node pair. When the
+				// unchanged files are skipped, only the nodes in the scope are partitioned and matched.
+				final ForkJoinTask<MatchPartition> partitionTask = ForkJoinPool.commonPool().submit(() -> scope != null
+						? MatchPartition.of(rootA, rootB, scope.scopeA, scope.scopeB, scope.counterparts)
+						: MatchPartition.of(rootA, rootB));
+				// the maps are only read after they are built, every task uses its own matcher to look them up
+				final CppNode[] nodesA = createNodes(rootA, scope != null ? scope.scopeA : null);
+				final CppNode[] nodesB = createNodes(rootB, scope != null ? scope.scopeB : null);
+				final ForkJoinTask<Map<CppNode.Wrapper, CppNode>> nodeMapTaskA
+						= ForkJoinPool.commonPool().submit(() -> createNodeMap(nodesA));
+				final Map<CppNode.Wrapper, CppNode> nodeMapB = createNodeMap(nodesB);
+				return new Comparison(rootA, rootB, scope, nodesA, nodesB, nodeMapTaskA.get(), nodeMapB,
+						partitionTask.get());
+			} catch (final InterruptedException | ExecutionException exception) {
+				throw new CppException("Cannot compare versions!", exception);
+			}
+		}
 
-		return new VersionDifference(versionA, versionB, addedNodes, changedNodes, unchangedNodes, removedNodes,
-				typeImpactWeights, impactWeights, maxDepth);
+		@Nonnull
+		MatchingTask matchingTask(boolean versionA) {
+			return matchingTask(versionA, 0, versionA ? nodesA.length : nodesB.length);
+		}
+
+		@Nonnull
+		MatchingTask matchingTask(boolean versionA, int start, int end) {
+			return versionA
+					? new MatchingTask(nodesA, nodeMapB, partition, true, start, end)
+					: new MatchingTask(nodesB, nodeMapA, partition, false, start, end);
+		}
+
+		/**
+		 * Add the settled nodes of the scope to the unchanged nodes.
+		 */
+		void addSettledNodes(@Nonnull Matching matching) {
+			if (scope == null) return;
+			final NodeTable tableA = rootA.getNodeTable();
+			final NodeTable tableB = rootB.getNodeTable();
+			for (int idB = 0; idB < scope.counterparts.length; idB++) {
+				final int idA = scope.counterparts[idB];
+				if (idA >= 0) matching.unchangedNodes.add(Pair.immutableOf(tableA.getNode(idA), tableB.getNode(idB)));
+			}
+		}
+	}
+
+	/**
+	 * Match the nodes of one version against the node map of the other version. Nodes of version A are classified as
+	 * unchanged, changed or removed, nodes of version B are only checked for being added.
+	 */
+	private static final class MatchingTask extends RecursiveTask<Matching> {
+		private static final long serialVersionUID = -1L;
+		private static final int THRESHOLD = 4096;
+
+		@Nonnull private final CppNode[] nodes;
+		@Nonnull private final Map<CppNode.Wrapper, CppNode> otherNodeMap;
+		@Nonnull private final MatchPartition partition;
+		private final boolean versionA;
+		private final int start;
+		private final int end;
+
+		MatchingTask(@Nonnull CppNode[] nodes, @Nonnull Map<CppNode.Wrapper, CppNode> otherNodeMap,
+				@Nonnull MatchPartition partition, boolean versionA, int start, int end) {
+			this.nodes = nodes;
+			this.otherNodeMap = otherNodeMap;
+			this.partition = partition;
+			this.versionA = versionA;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Nonnull
+		@Override
+		protected Matching compute() {
+			if (end - start > THRESHOLD) {
+				final int middle = (start + end) >>> 1;
+				final ForkJoinTask<Matching> taskA
+						= new MatchingTask(nodes, otherNodeMap, partition, versionA, start, middle).fork();
+				final Matching matchingB
+						= new MatchingTask(nodes, otherNodeMap, partition, versionA, middle, end).compute();
+				return taskA.join().merge(matchingB);
+			}
+
+			final CppNode.Matcher matcher = new CppNode.Matcher();
+			final Matching matching = new Matching();
+			for (int index = start; index < end; index++) {
+				final CppNode node = nodes[index];
+				final CppNode otherNode
+						= otherNodeMap.get(new CppNode.Wrapper(node, CppNode.MatchLevel.SIMILAR, matcher));
+				if (!versionA) {
+					if (otherNode == null) {
+						matching.addedNodes.add(node);
+						matching.changedListB.add(node);
+					}
+				} else if (otherNode == null) {
+					matching.removedNodes.add(node);
+				} else if (partition.isNodeMatch(node, otherNode, CppNode.MatchLevel.IDENTICAL)) {
+					matching.unchangedNodes.add(Pair.immutableOf(node, otherNode));
+				} else {
+					matching.changedNodes.add(Pair.immutableOf(node, otherNode));
+					matching.changedListB.add(otherNode);
+				}
+			}
+			return matching;
+		}
 	}
 }
@@ -4,57 +4,123 @@ import mrmathami.annotations.Nonnull;
 import mrmathami.annotations.Nullable;
 import mrmathami.cia.cpp.ast.CppNode;
 import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.NodeTable;
 import mrmathami.cia.cpp.ast.RootNode;
 import mrmathami.cia.cpp.builder.ProjectVersion;
 import mrmathami.utils.Pair;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+/**
+ * The difference between two versions of a project. A difference is immutable and thread-safe: the lazily created maps
+ * are immutable and published through volatile fields, so one instance can serve queries from many threads.
+ * <p>
+ * The classified nodes are kept as sorted arrays of node ids, the pairs as parallel arrays sorted by the ids of
+ * version A, and the node sets are read-only views over them. The ids are written delta encoded, so a serialized
+ * difference takes about a byte per node besides the versions.
+ */
 public final class VersionDifference implements Serializable {
-	private static final long serialVersionUID = -1L;
+	private static final long serialVersionUID = -2L;
 
 	@Nonnull private final ProjectVersion versionA;
 	@Nonnull private final ProjectVersion versionB;
-	@Nonnull private final Set<CppNode> addedNodes;
-	@Nonnull private final Set<Pair<CppNode, CppNode>> changedNodes;
-	@Nonnull private final Set<Pair<CppNode, CppNode>> unchangedNodes;
-	@Nonnull private final Set<CppNode> removedNodes;
+	@Nonnull private transient int[] addedIds; // ids of version B
+	@Nonnull private transient int[] changedIdsA;
+	@Nonnull private transient int[] changedIdsB;
+	@Nonnull private transient int[] unchangedIdsA;
+	@Nonnull private transient int[] unchangedIdsB;
+	@Nonnull private transient int[] removedIds; // ids of version A
+	@Nonnull private transient int[] movedIdsA;
+	@Nonnull private transient int[] movedIdsB;
 	@Nonnull private final double[] typeImpactWeights;
 	@Nonnull private final double[] impactWeights;
 	private final int maxDepth;
 
-	@Nullable private transient Map<DependencyType, Double> typeImpactWeightMap;
-	@Nullable private transient Map<CppNode, Double> impactWeightMap;
+	@Nullable private transient volatile Set<CppNode> addedNodes;
+	@Nullable private transient volatile Set<Pair<CppNode, CppNode>> changedNodes;
+	@Nullable private transient volatile Set<Pair<CppNode, CppNode>> unchangedNodes;
+	@Nullable private transient volatile Set<CppNode> removedNodes;
+	@Nullable private transient volatile Set<Pair<CppNode, CppNode>> movedNodes;
+	@Nullable private transient volatile Map<DependencyType, Double> typeImpactWeightMap;
+	@Nullable private transient volatile Map<CppNode, Double> impactWeightMap;
 
 	VersionDifference(@Nonnull ProjectVersion versionA, @Nonnull ProjectVersion versionB,
-			@Nonnull Set<CppNode> addedNodes, @Nonnull Set<Pair<CppNode, CppNode>> changedNodes,
-			@Nonnull Set<Pair<CppNode, CppNode>> unchangedNodes, @Nonnull Set<CppNode> removedNodes,
-			@Nonnull double[] typeImpactWeights, @Nonnull double[] impactWeights, int maxDepth) {
+			@Nonnull VersionDiffer.Matching matching, @Nonnull double[] typeImpactWeights,
+			@Nonnull double[] impactWeights, int maxDepth) {
 		this.versionA = versionA;
 		this.versionB = versionB;
-		this.addedNodes = Set.copyOf(addedNodes);
-		this.changedNodes = Set.copyOf(changedNodes);
-		this.unchangedNodes = Set.copyOf(unchangedNodes);
-		this.removedNodes = Set.copyOf(removedNodes);
+		this.addedIds = toIds(matching.addedNodes);
+		final long[] changedPairs = toIdPairs(matching.changedNodes);
+		this.changedIdsA = getIdsA(changedPairs);
+		this.changedIdsB = getIdsB(changedPairs);
+		final long[] unchangedPairs = toIdPairs(matching.unchangedNodes);
+		this.unchangedIdsA = getIdsA(unchangedPairs);
+		this.unchangedIdsB = getIdsB(unchangedPairs);
+		this.removedIds = toIds(matching.removedNodes);
+		final long[] movedPairs = toIdPairs(matching.movedNodes);
+		this.movedIdsA = getIdsA(movedPairs);
+		this.movedIdsB = getIdsB(movedPairs);
 		this.typeImpactWeights = typeImpactWeights.clone();
 		this.impactWeights = impactWeights.clone();
 		this.maxDepth = maxDepth;
 	}
 
+	@Nonnull
+	private static int[] toIds(@Nonnull List<CppNode> nodes) {
+		final int[] ids = new int[nodes.size()];
+		for (int index = 0; index < ids.length; index++) ids[index] = nodes.get(index).getId();
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	@Nonnull
+	private static long[] toIdPairs(@Nonnull List<Pair<CppNode, CppNode>> nodePairs) {
+		final long[] idPairs = new long[nodePairs.size()];
+		for (int index = 0; index < idPairs.length; index++) {
+			final Pair<CppNode, CppNode> pair = nodePairs.get(index);
+			idPairs[index] = (long) pair.getA().getId() << 32 | pair.getB().getId();
+		}
+		Arrays.sort(idPairs);
+		return idPairs;
+	}
+
+	@Nonnull
+	private static int[] getIdsA(@Nonnull long[] idPairs) {
+		final int[] ids = new int[idPairs.length];
+		for (int index = 0; index < ids.length; index++) ids[index] = (int) (idPairs[index] >>> 32);
+		return ids;
+	}
+
+	@Nonnull
+	private static int[] getIdsB(@Nonnull long[] idPairs) {
+		final int[] ids = new int[idPairs.length];
+		for (int index = 0; index < ids.length; index++) ids[index] = (int) idPairs[index];
+		return ids;
+	}
+
 	@Nonnull
 	public static VersionDifference fromInputStream(@Nonnull InputStream inputStream) throws IOException {
 		final ObjectInputStream objectInputStream = new ObjectInputStream(inputStream);
 		try {
 			return (VersionDifference) objectInputStream.readObject();
+		} catch (InvalidClassException e) {
+			throw new IOException("Input file was saved in an older, unsupported format!", e);
 		} catch (ClassNotFoundException | ClassCastException e) {
 			throw new IOException("Wrong input file format!", e);
 		}
@@ -78,26 +144,51 @@ public final class VersionDifference implements Serializable {
 
 	@Nonnull
 	public Set<CppNode> getAddedNodes() {
-		return addedNodes;
+		final Set<CppNode> addedNodes = this.addedNodes;
+		if (addedNodes != null) return addedNodes;
+		return this.addedNodes = new NodeSet(versionB.getRootNode().getNodeTable(), addedIds);
 	}
 
 	@Nonnull
 	public Set<Pair<CppNode, CppNode>> getChangedNodes() {
-		return changedNodes;
+		final Set<Pair<CppNode, CppNode>> changedNodes = this.changedNodes;
+		if (changedNodes != null) return changedNodes;
+		return this.changedNodes = new NodePairSet(versionA.getRootNode().getNodeTable(),
+				versionB.getRootNode().getNodeTable(), changedIdsA, changedIdsB);
 	}
 
 	@Nonnull
 	public Set<Pair<CppNode, CppNode>> getUnchangedNodes() {
-		return unchangedNodes;
+		final Set<Pair<CppNode, CppNode>> unchangedNodes = this.unchangedNodes;
+		if (unchangedNodes != null) return unchangedNodes;
+		return this.unchangedNodes = new NodePairSet(versionA.getRootNode().getNodeTable(),
+				versionB.getRootNode().getNodeTable(), unchangedIdsA, unchangedIdsB);
 	}
 
 	@Nonnull
 	public Set<CppNode> getRemovedNodes() {
-		return removedNodes;
+		final Set<CppNode> removedNodes = this.removedNodes;
+		if (removedNodes != null) return removedNodes;
+		return this.removedNodes = new NodeSet(versionA.getRootNode().getNodeTable(), removedIds);
+	}
+
+	/**
+	 * Get the nodes of version A that were moved or renamed to a node of version B. These nodes are neither in the
+	 * removed nodes nor in the added nodes. The set is empty unless the versions were compared with move detection.
+	 *
+	 * @return the moved node pairs
+	 */
+	@Nonnull
+	public Set<Pair<CppNode, CppNode>> getMovedNodes() {
+		final Set<Pair<CppNode, CppNode>> movedNodes = this.movedNodes;
+		if (movedNodes != null) return movedNodes;
+		return this.movedNodes = new NodePairSet(versionA.getRootNode().getNodeTable(),
+				versionB.getRootNode().getNodeTable(), movedIdsA, movedIdsB);
 	}
 
 	@Nonnull
 	public Map<DependencyType, Double> getDependencyTypeImpactWeightMap() {
+		final Map<DependencyType, Double> typeImpactWeightMap = this.typeImpactWeightMap;
 		if (typeImpactWeightMap != null) return typeImpactWeightMap;
 		final Map<DependencyType, Double> map = new EnumMap<>(DependencyType.class);
 		for (final DependencyType type : DependencyType.values()) {
@@ -108,6 +199,7 @@ public final class VersionDifference implements Serializable {
 
 	@Nonnull
 	public Map<CppNode, Double> getImpactWeightMap() {
+		final Map<CppNode, Double> impactWeightMap = this.impactWeightMap;
 		if (impactWeightMap != null) return impactWeightMap;
 		final Map<CppNode, Double> map = new IdentityHashMap<>();
 		final RootNode rootNode = versionB.getRootNode();
@@ -119,4 +211,174 @@ public final class VersionDifference implements Serializable {
 	public int getMaxDepth() {
 		return maxDepth;
 	}
+
+	//region Object Helper
+
+	private void writeObject(@Nonnull ObjectOutputStream output) throws IOException {
+		output.defaultWriteObject();
+		writeIds(output, addedIds);
+		writeIds(output, changedIdsA);
+		writeIds(output, changedIdsB);
+		writeIds(output, unchangedIdsA);
+		writeIds(output, unchangedIdsB);
+		writeIds(output, removedIds);
+		writeIds(output, movedIdsA);
+		writeIds(output, movedIdsB);
+	}
+
+	private void readObject(@Nonnull ObjectInputStream input) throws IOException, ClassNotFoundException {
+		input.defaultReadObject();
+		this.addedIds = readIds(input);
+		this.changedIdsA = readIds(input);
+		this.changedIdsB = readIds(input);
+		this.unchangedIdsA = readIds(input);
+		this.unchangedIdsB = readIds(input);
+		this.removedIds = readIds(input);
+		this.movedIdsA = readIds(input);
+		this.movedIdsB = readIds(input);
+		if (changedIdsA.length != changedIdsB.length || unchangedIdsA.length != unchangedIdsB.length
+				|| movedIdsA.length != movedIdsB.length) {
+			throw new InvalidObjectException("Wrong version difference format!");
+		}
+	}
+
+	private static void writeIds(@Nonnull ObjectOutputStream output, @Nonnull int[] ids) throws IOException {
+		// the ids are close to each other, so the zigzag encoded deltas mostly fit in a byte
+		output.writeInt(ids.length);
+		int previousId = 0;
+		for (final int id : ids) {
+			final int delta = id - previousId;
+			int value = (delta << 1) ^ (delta >> 31);
+			while ((value & ~0x7F) != 0) {
+				output.writeByte(value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			output.writeByte(value);
+			previousId = id;
+		}
+	}
+
+	@Nonnull
+	private static int[] readIds(@Nonnull ObjectInputStream input) throws IOException {
+		final int length = input.readInt();
+		if (length < 0) throw new InvalidObjectException("Wrong version difference format!");
+		final int[] ids = new int[length];
+		int previousId = 0;
+		for (int index = 0; index < length; index++) {
+			int value = 0;
+			for (int shift = 0; ; shift += 7) {
+				if (shift > 28) throw new InvalidObjectException("Wrong version difference format!");
+				final int part = input.readUnsignedByte();
+				value |= (part & 0x7F) << shift;
+				if ((part & 0x80) == 0) break;
+			}
+			previousId += (value >>> 1) ^ -(value & 1);
+			ids[index] = previousId;
+		}
+		return ids;
+	}
+
+	//endregion Object Helper
+
+	/**
+	 * A read-only set view over sorted node ids of a version.
+	 */
+	private static final class NodeSet extends AbstractSet<CppNode> {
+		@Nonnull private final NodeTable table;
+		@Nonnull private final int[] ids;
+
+		NodeSet(@Nonnull NodeTable table, @Nonnull int[] ids) {
+			this.table = table;
+			this.ids = ids;
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+
+		@Override
+		public boolean contains(@Nullable Object object) {
+			if (!(object instanceof CppNode)) return false;
+			final CppNode node = (CppNode) object;
+			final int id = node.getId();
+			return Arrays.binarySearch(ids, id) >= 0 && table.getNode(id) == node;
+		}
+
+		@Nonnull
+		@Override
+		public Iterator<CppNode> iterator() {
+			return new Iterator<>() {
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index < ids.length;
+				}
+
+				@Nonnull
+				@Override
+				public CppNode next() {
+					if (index >= ids.length) throw new NoSuchElementException();
+					return table.getNode(ids[index++]);
+				}
+			};
+		}
+	}
+
+	/**
+	 * A read-only set view over node id pairs of two versions, sorted by the ids of version A.
+	 */
+	private static final class NodePairSet extends AbstractSet<Pair<CppNode, CppNode>> {
+		@Nonnull private final NodeTable tableA;
+		@Nonnull private final NodeTable tableB;
+		@Nonnull private final int[] idsA;
+		@Nonnull private final int[] idsB;
+
+		NodePairSet(@Nonnull NodeTable tableA, @Nonnull NodeTable tableB, @Nonnull int[] idsA, @Nonnull int[] idsB) {
+			this.tableA = tableA;
+			this.tableB = tableB;
+			this.idsA = idsA;
+			this.idsB = idsB;
+		}
+
+		@Override
+		public int size() {
+			return idsA.length;
+		}
+
+		@Override
+		public boolean contains(@Nullable Object object) {
+			if (!(object instanceof Pair)) return false;
+			final Object nodeA = ((Pair<?, ?>) object).getA();
+			final Object nodeB = ((Pair<?, ?>) object).getB();
+			if (!(nodeA instanceof CppNode) || !(nodeB instanceof CppNode)) return false;
+			// a node of version A is in one pair at most
+			final int index = Arrays.binarySearch(idsA, ((CppNode) nodeA).getId());
+			return index >= 0 && tableA.getNode(idsA[index]) == nodeA && tableB.getNode(idsB[index]) == nodeB;
+		}
+
+		@Nonnull
+		@Override
+		public Iterator<Pair<CppNode, CppNode>> iterator() {
+			return new Iterator<>() {
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index < idsA.length;
+				}
+
+				@Nonnull
+				@Override
+				public Pair<CppNode, CppNode> next() {
+					if (index >= idsA.length) throw new NoSuchElementException();
+					final Pair<CppNode, CppNode> pair
+							= Pair.immutableOf(tableA.getNode(idsA[index]), tableB.getNode(idsB[index]));
+					index += 1;
+					return pair;
+				}
+			};
+		}
+	}
 }
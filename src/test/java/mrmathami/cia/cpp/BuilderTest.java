@@ -1,5 +1,6 @@
 package mrmathami.cia.cpp;
 
+import mrmathami.cia.cpp.builder.FileOriginTable;
 import mrmathami.cia.cpp.builder.ProjectVersion;
 import mrmathami.cia.cpp.builder.VersionBuilder;
 
@@ -108,6 +109,8 @@ public final class BuilderTest {
 			System.out.println((System.nanoTime() - start_time) / 1000000.0);
 
 			System.out.println(projectVersion.getRootNode().toTreeString());
+			final FileOriginTable fileOrigins = projectVersion.getFileOrigins();
+			if (fileOrigins != null) System.out.println(fileOrigins.getFiles());
 
 			try (final OutputStream outputStream = Files.newOutputStream(outputProject)) {
 				projectVersion.toOutputStream(outputStream);
@@ -0,0 +1,102 @@
+package mrmathami.cia.cpp;
+
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.IntegralNode;
+import mrmathami.cia.cpp.builder.ProjectVersion;
+import mrmathami.cia.cpp.differ.VersionChain;
+import mrmathami.cia.cpp.differ.VersionDiffer;
+import mrmathami.cia.cpp.differ.VersionDifference;
+import mrmathami.utils.Pair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public final class ChainTest {
+	private ChainTest() {
+	}
+
+	public static void main(String[] args) throws IOException, CppException {
+		// the versions of the history, in order; by default the old version comes back after the new one, so the
+		// content of the changed nodes reappears
+		final List<String> paths = args.length > 0
+				? List.of(args)
+				: List.of("test4_old.proj", "test4_new.proj", "test4_old.proj");
+		final List<ProjectVersion> versions = new ArrayList<>();
+		for (final String path : paths) {
+			try (final InputStream inputStream = Files.newInputStream(Path.of(path))) {
+				versions.add(ProjectVersion.fromInputStream(inputStream));
+			}
+		}
+
+		final long start_time = System.nanoTime();
+		final VersionChain chain = new VersionChain(versions);
+		System.out.println((System.nanoTime() - start_time) / 1000000.0);
+
+		// every ordered pair of versions, compared by the chain and by the differ
+		int differences = 0;
+		for (int indexA = 0; indexA < versions.size(); indexA++) {
+			for (int indexB = 0; indexB < versions.size(); indexB++) {
+				final VersionDifference expected = VersionDiffer.compare(versions.get(indexA), versions.get(indexB),
+						VersionDiffer.IMPACT_WEIGHT_MAP, 8);
+				final VersionDifference actual = chain.compare(indexA, indexB, VersionDiffer.IMPACT_WEIGHT_MAP, 8);
+				final boolean same = expected.getAddedNodes().equals(actual.getAddedNodes())
+						&& expected.getChangedNodes().equals(actual.getChangedNodes())
+						&& expected.getUnchangedNodes().equals(actual.getUnchangedNodes())
+						&& expected.getRemovedNodes().equals(actual.getRemovedNodes())
+						&& sameWeights(expected.getImpactWeightMap(), actual.getImpactWeightMap());
+				if (!same) differences += 1;
+				System.out.println(paths.get(indexA) + " -> " + paths.get(indexB) + (same ? " same" : " DIFFERENT")
+						+ ", changed " + expected.getChangedNodes().size()
+						+ ", added " + expected.getAddedNodes().size()
+						+ ", removed " + expected.getRemovedNodes().size());
+			}
+		}
+
+		// a version that is the same as an earlier one keeps the identities of its nodes, and their content too, even
+		// if it changed in between
+		for (int indexB = 0; indexB < versions.size(); indexB++) {
+			for (int indexA = 0; indexA < indexB; indexA++) {
+				if (!paths.get(indexA).equals(paths.get(indexB))) continue;
+				final VersionDifference difference
+						= chain.compare(indexA, indexB, VersionDiffer.IMPACT_WEIGHT_MAP, 8);
+				final ProjectVersion versionB = versions.get(indexB);
+				int samePairs = 0;
+				for (final Pair<CppNode, CppNode> pair : difference.getUnchangedNodes()) {
+					if (pair.getA().getId() == pair.getB().getId()) samePairs += 1;
+				}
+				final boolean same = difference.getChangedNodes().isEmpty()
+						&& difference.getAddedNodes().isEmpty()
+						&& difference.getRemovedNodes().isEmpty()
+						&& samePairs == difference.getUnchangedNodes().size()
+						&& samePairs == versionB.getRootNode().getNodeCount() - integralCount(versionB);
+				if (!same) differences += 1;
+				System.out.println(paths.get(indexA) + " -> " + paths.get(indexB) + " in the chain"
+						+ (same ? " same" : " DIFFERENT") + ", unchanged " + difference.getUnchangedNodes().size()
+						+ ", same node " + samePairs);
+			}
+		}
+		System.out.println("differences " + differences);
+	}
+
+	// the integral nodes are not compared
+	private static int integralCount(ProjectVersion version) {
+		int count = 0;
+		for (final CppNode node : version.getRootNode()) if (node instanceof IntegralNode) count += 1;
+		return count;
+	}
+
+	private static boolean sameWeights(Map<CppNode, Double> expected, Map<CppNode, Double> actual) {
+		if (!expected.keySet().equals(actual.keySet())) return false;
+		for (final Map.Entry<CppNode, Double> entry : expected.entrySet()) {
+			final Double weight = actual.get(entry.getKey());
+			if (Math.abs(entry.getValue() - Objects.requireNonNull(weight)) > 1e-12) return false;
+		}
+		return true;
+	}
+}
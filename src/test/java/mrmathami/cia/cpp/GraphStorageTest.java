@@ -0,0 +1,74 @@
+package mrmathami.cia.cpp;
+
+import mrmathami.cia.cpp.ast.BodyStorage;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.GraphStorage;
+import mrmathami.cia.cpp.ast.RootNode;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class GraphStorageTest {
+	private static final long SEED = 7;
+
+	private GraphStorageTest() {
+	}
+
+	public static void main(String[] args) {
+		final int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		final int linkCount = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+		// the heap and the direct memory held by a locked tree, for each storage of the graph
+		for (final GraphStorage storage : GraphStorage.values()) {
+			final long heapBefore = usedHeap();
+			final long directBefore = usedDirect();
+			final RootNode root = createTree(nodeCount, linkCount, storage);
+			final long heap = usedHeap() - heapBefore;
+			final long direct = usedDirect() - directBefore;
+			System.out.printf("%s: %d nodes, %d links/node, heap %.1f MB, direct %.1f MB%n", storage,
+					root.getNodeCount(), linkCount, heap / 1048576.0, direct / 1048576.0);
+		}
+	}
+
+	private static RootNode createTree(int nodeCount, int linkCount, GraphStorage storage) {
+		final Random random = new Random(SEED);
+		final RootNode root = new RootNode();
+		final List<FunctionNode> functions = new ArrayList<>(nodeCount);
+		for (int index = 0; index < nodeCount; index++) {
+			final FunctionNode function = new FunctionNode();
+			function.setName("f" + index);
+			function.setUniqueName("f" + index);
+			function.setSignature("void f" + index + "()");
+			root.addChild(function);
+			functions.add(function);
+		}
+		for (final FunctionNode function : functions) {
+			for (int link = 0; link < linkCount; link++) {
+				final FunctionNode target = functions.get(random.nextInt(nodeCount));
+				if (target != function) {
+					function.addDependencyTo(target,
+							random.nextInt(3) == 0 ? DependencyType.USE : DependencyType.INVOCATION);
+				}
+			}
+		}
+		root.lock(BodyStorage.STRING, storage);
+		return root;
+	}
+
+	private static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int index = 0; index < 4; index++) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long usedDirect() {
+		for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+		}
+		return 0;
+	}
+}
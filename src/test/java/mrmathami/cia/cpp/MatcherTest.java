@@ -0,0 +1,143 @@
+package mrmathami.cia.cpp;
+
+import mrmathami.cia.cpp.ast.ClassNode;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.NamespaceNode;
+import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.ast.VariableNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Time the node matcher on a synthetic pair of versions: every node of the old version is matched with every node of
+ * the same kind of the new version, at every match level, with a new matcher for each run. The match counts are
+ * printed too, so runs on different commits can be checked to give the same result. The median time of the runs after
+ * a warm up is printed.
+ */
+public final class MatcherTest {
+	private static final long SEED = 7;
+	private static final int WARM_UP_RUNS = 5;
+	private static final int RUNS = 15;
+
+	private MatcherTest() {
+	}
+
+	public static void main(String[] args) {
+		final int classCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		final RootNode rootA = createTree(classCount, false);
+		final RootNode rootB = createTree(classCount, true);
+		final List<List<CppNode>> groupsA = groupByClass(rootA);
+		final List<List<CppNode>> groupsB = groupByClass(rootB);
+
+		final int[] matches = new int[CppNode.MatchLevel.values().length];
+		for (int run = 0; run < WARM_UP_RUNS; run++) matchAll(groupsA, groupsB, matches);
+		final double[] times = new double[RUNS];
+		for (int run = 0; run < RUNS; run++) {
+			final long start_time = System.nanoTime();
+			matchAll(groupsA, groupsB, matches);
+			times[run] = (System.nanoTime() - start_time) / 1000000.0;
+		}
+		Arrays.sort(times);
+
+		System.out.println("nodes " + rootA.getNodeCount() + " " + rootB.getNodeCount());
+		for (final CppNode.MatchLevel level : CppNode.MatchLevel.values()) {
+			System.out.println(level + " matches " + matches[level.ordinal()]);
+		}
+		System.out.printf("median %.1f ms, min %.1f ms, max %.1f ms%n", times[RUNS / 2], times[0], times[RUNS - 1]);
+	}
+
+	private static void matchAll(List<List<CppNode>> groupsA, List<List<CppNode>> groupsB, int[] matches) {
+		final CppNode.Matcher matcher = new CppNode.Matcher();
+		Arrays.fill(matches, 0);
+		for (final CppNode.MatchLevel level : CppNode.MatchLevel.values()) {
+			for (int group = 0; group < groupsA.size(); group++) {
+				for (final CppNode nodeA : groupsA.get(group)) {
+					for (final CppNode nodeB : groupsB.get(group)) {
+						if (matcher.isNodeMatch(nodeA, nodeB, level)) matches[level.ordinal()] += 1;
+					}
+				}
+			}
+		}
+	}
+
+	private static List<List<CppNode>> groupByClass(RootNode root) {
+		final Map<Class<?>, List<CppNode>> groups = new HashMap<>();
+		for (final CppNode node : root) groups.computeIfAbsent(node.getClass(), any -> new ArrayList<>()).add(node);
+		final List<List<CppNode>> list = new ArrayList<>();
+		for (final Class<?> nodeClass : List.of(NamespaceNode.class, ClassNode.class, FunctionNode.class,
+				VariableNode.class)) {
+			list.add(groups.getOrDefault(nodeClass, List.of()));
+		}
+		return list;
+	}
+
+	// namespaces of classes, each with some fields and methods; the new version has some bodies changed and some
+	// methods renamed
+	private static RootNode createTree(int classCount, boolean changed) {
+		final Random random = new Random(SEED);
+		final RootNode root = new RootNode();
+		final List<ClassNode> classes = new ArrayList<>(classCount);
+		final List<FunctionNode> functions = new ArrayList<>();
+		final List<VariableNode> variables = new ArrayList<>();
+		NamespaceNode namespace = null;
+		for (int index = 0; index < classCount; index++) {
+			if (index % 10 == 0) {
+				namespace = new NamespaceNode();
+				namespace.setName("ns" + index / 10);
+				namespace.setUniqueName("ns" + index / 10);
+				namespace.setSignature("ns" + index / 10);
+				root.addChild(namespace);
+			}
+			final String className = "C" + index;
+			final String classUniqueName = namespace.getUniqueName() + "::" + className;
+			final ClassNode classNode = new ClassNode();
+			classNode.setName(className);
+			classNode.setUniqueName(classUniqueName);
+			classNode.setSignature("class " + className);
+			namespace.addChild(classNode);
+			classes.add(classNode);
+
+			for (int field = 0; field < 4; field++) {
+				final VariableNode variable = new VariableNode();
+				variable.setName("v" + field);
+				variable.setUniqueName(classUniqueName + "::v" + field);
+				variable.setSignature("int v" + field);
+				variable.setBody("int v" + field + " = " + field + ";");
+				classNode.addChild(variable);
+				variables.add(variable);
+			}
+			for (int method = 0; method < 8; method++) {
+				// both versions draw the same numbers, so they only differ in the changes
+				final boolean renamed = random.nextInt(50) == 0 && changed;
+				final boolean bodyChanged = random.nextInt(10) == 0 && changed;
+				final String name = renamed ? "f" + method + "_renamed" : "f" + method;
+				final FunctionNode function = new FunctionNode();
+				function.setName(name);
+				function.setUniqueName(classUniqueName + "::" + name);
+				function.setSignature("void " + name + "(int)");
+				function.setBody("void " + name + "(int x) { return " + (bodyChanged ? "x + 1" : "x") + "; }");
+				classNode.addChild(function);
+				functions.add(function);
+			}
+		}
+		for (final FunctionNode function : functions) {
+			for (int link = 0; link < 3; link++) {
+				final FunctionNode target = functions.get(random.nextInt(functions.size()));
+				if (target != function) function.addDependencyTo(target, DependencyType.INVOCATION);
+				function.addDependencyTo(variables.get(random.nextInt(variables.size())), DependencyType.USE);
+			}
+		}
+		for (final VariableNode variable : variables) {
+			variable.setType(classes.get(random.nextInt(classes.size())));
+		}
+		root.lock();
+		return root;
+	}
+}
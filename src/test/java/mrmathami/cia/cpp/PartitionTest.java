@@ -0,0 +1,69 @@
+package mrmathami.cia.cpp;
+
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.MatchPartition;
+import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.builder.ProjectVersion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class PartitionTest {
+	private static final int MAX_GROUP_SIZE = 64;
+
+	private PartitionTest() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		final Path oldPath = Path.of("test4_old.proj");
+		final Path newPath = Path.of("test4_new.proj");
+
+		try (final InputStream oldPathInputStream = Files.newInputStream(oldPath);
+				final InputStream newPathInputStream = Files.newInputStream(newPath)) {
+			final RootNode rootA = ProjectVersion.fromInputStream(oldPathInputStream).getRootNode();
+			final RootNode rootB = ProjectVersion.fromInputStream(newPathInputStream).getRootNode();
+
+			final long start_time = System.nanoTime();
+			final MatchPartition partition = MatchPartition.of(rootA, rootB);
+			System.out.println((System.nanoTime() - start_time) / 1000000.0);
+
+			// the nodes of both versions grouped by name, every pair of a group is checked at every level
+			final Map<String, List<CppNode>> groups = new HashMap<>();
+			for (final RootNode root : List.of(rootA, rootB)) {
+				groups.computeIfAbsent(root.getName(), any -> new ArrayList<>()).add(root);
+				for (final CppNode node : root) groups.computeIfAbsent(node.getName(), any -> new ArrayList<>()).add(node);
+			}
+
+			int checks = 0;
+			int matches = 0;
+			int mismatches = 0;
+			for (final CppNode.MatchLevel level : CppNode.MatchLevel.values()) {
+				final CppNode.Matcher matcher = new CppNode.Matcher();
+				for (final List<CppNode> group : groups.values()) {
+					final int size = Math.min(group.size(), MAX_GROUP_SIZE);
+					for (int indexA = 0; indexA < size; indexA++) {
+						for (int indexB = 0; indexB < size; indexB++) {
+							final CppNode nodeA = group.get(indexA);
+							final CppNode nodeB = group.get(indexB);
+							final boolean expected = matcher.isNodeMatch(nodeA, nodeB, level);
+							checks += 1;
+							if (expected) matches += 1;
+							if (partition.isNodeMatch(nodeA, nodeB, level) != expected) {
+								mismatches += 1;
+								System.out.println("MISMATCH " + level + " " + nodeA.getUniqueName()
+										+ " " + nodeB.getUniqueName() + " expected " + expected);
+							}
+						}
+					}
+				}
+			}
+			System.out.println("checks " + checks + " matches " + matches + " mismatches " + mismatches);
+		}
+	}
+}
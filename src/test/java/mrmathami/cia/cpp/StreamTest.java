@@ -0,0 +1,97 @@
+package mrmathami.cia.cpp;
+
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.builder.ProjectVersion;
+import mrmathami.cia.cpp.differ.DifferenceSink;
+import mrmathami.cia.cpp.differ.ImpactEngine;
+import mrmathami.cia.cpp.differ.VersionDiffer;
+import mrmathami.cia.cpp.differ.VersionDifference;
+import mrmathami.utils.Pair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+public final class StreamTest {
+	private StreamTest() {
+	}
+
+	public static void main(String[] args) throws IOException, CppException {
+		final Path oldPath = Path.of(args.length > 0 ? args[0] : "test4_old.proj");
+		final Path newPath = Path.of(args.length > 1 ? args[1] : "test4_new.proj");
+
+		try (final InputStream oldPathInputStream = Files.newInputStream(oldPath);
+				final InputStream newPathInputStream = Files.newInputStream(newPath)) {
+			final ProjectVersion versionA = ProjectVersion.fromInputStream(oldPathInputStream);
+			final ProjectVersion versionB = ProjectVersion.fromInputStream(newPathInputStream);
+
+			// the streamed result of every mode has to be the same as the result of the differ
+			int differences = 0;
+			for (final boolean skipUnchangedFiles : new boolean[]{false, true}) {
+				for (final ImpactEngine engine : ImpactEngine.values()) {
+					final VersionDifference expected = VersionDiffer.compare(versionA, versionB,
+							VersionDiffer.IMPACT_WEIGHT_MAP, 8, skipUnchangedFiles, false, engine);
+					final CollectingSink actual = new CollectingSink();
+					final long start_time = System.nanoTime();
+					VersionDiffer.compare(versionA, versionB, VersionDiffer.IMPACT_WEIGHT_MAP, 8, skipUnchangedFiles,
+							engine, actual);
+					final double time = (System.nanoTime() - start_time) / 1000000.0;
+
+					final boolean same = expected.getRemovedNodes().equals(actual.removedNodes)
+							&& expected.getChangedNodes().equals(actual.changedNodes)
+							&& expected.getAddedNodes().equals(actual.addedNodes)
+							&& sameWeights(expected.getImpactWeightMap(), actual.impactWeights);
+					if (!same) differences += 1;
+					System.out.println("skip " + skipUnchangedFiles + ", " + engine + (same ? " same" : " DIFFERENT")
+							+ ", changed " + actual.changedNodes.size()
+							+ ", added " + actual.addedNodes.size()
+							+ ", removed " + actual.removedNodes.size()
+							+ ", " + time + " ms");
+				}
+			}
+			System.out.println("differences " + differences);
+		}
+	}
+
+	private static boolean sameWeights(Map<CppNode, Double> expected, Map<CppNode, Double> actual) {
+		if (!expected.keySet().equals(actual.keySet())) return false;
+		for (final Map.Entry<CppNode, Double> entry : expected.entrySet()) {
+			final Double weight = actual.get(entry.getKey());
+			if (Math.abs(entry.getValue() - Objects.requireNonNull(weight)) > 1e-12) return false;
+		}
+		return true;
+	}
+
+	private static final class CollectingSink implements DifferenceSink {
+		private final Set<CppNode> removedNodes = new HashSet<>();
+		private final Set<Pair<CppNode, CppNode>> changedNodes = new HashSet<>();
+		private final Set<CppNode> addedNodes = new HashSet<>();
+		private final Map<CppNode, Double> impactWeights = new HashMap<>();
+
+		@Override
+		public void removedNode(CppNode nodeA) {
+			removedNodes.add(nodeA);
+		}
+
+		@Override
+		public void changedNode(CppNode nodeA, CppNode nodeB) {
+			changedNodes.add(Pair.immutableOf(nodeA, nodeB));
+		}
+
+		@Override
+		public void addedNode(CppNode nodeB) {
+			addedNodes.add(nodeB);
+		}
+
+		@Override
+		public void impactWeight(CppNode nodeB, double weight) {
+			impactWeights.put(nodeB, weight);
+		}
+	}
+}
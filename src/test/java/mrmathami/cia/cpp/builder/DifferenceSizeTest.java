@@ -0,0 +1,119 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.cia.cpp.CppException;
+import mrmathami.cia.cpp.ast.ClassNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.NamespaceNode;
+import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.ast.VariableNode;
+import mrmathami.cia.cpp.differ.VersionDiffer;
+import mrmathami.cia.cpp.differ.VersionDifference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measure the serialized size of the difference of a synthetic pair of versions. The difference holds both versions,
+ * so their size written alone is subtracted: what is left are the node sets, the impact weights and the depth. The
+ * driver is in the builder package because versions are only created by the builder.
+ */
+public final class DifferenceSizeTest {
+	private static final long SEED = 7;
+
+	private DifferenceSizeTest() {
+	}
+
+	public static void main(String[] args) throws IOException, CppException {
+		final int classCount = args.length > 0 ? Integer.parseInt(args[0]) : 1150;
+		final ProjectVersion versionA = createVersion("a", classCount, false);
+		final ProjectVersion versionB = createVersion("b", classCount, true);
+		final VersionDifference difference = VersionDiffer.compare(versionA, versionB,
+				VersionDiffer.IMPACT_WEIGHT_MAP, 4);
+
+		final ByteArrayOutputStream differenceBytes = new ByteArrayOutputStream();
+		difference.toOutputStream(differenceBytes);
+		final ByteArrayOutputStream versionBytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream output = new ObjectOutputStream(versionBytes)) {
+			output.writeObject(versionA);
+			output.writeObject(versionB);
+		}
+		final int impactWeightBytes = versionB.getRootNode().getNodeCount() * Double.BYTES;
+
+		System.out.println("nodes " + versionA.getRootNode().getNodeCount()
+				+ " " + versionB.getRootNode().getNodeCount());
+		System.out.println("added " + difference.getAddedNodes().size()
+				+ ", removed " + difference.getRemovedNodes().size()
+				+ ", changed " + difference.getChangedNodes().size()
+				+ ", unchanged " + difference.getUnchangedNodes().size());
+		System.out.println("difference " + differenceBytes.size() + " bytes, versions " + versionBytes.size()
+				+ " bytes, rest " + (differenceBytes.size() - versionBytes.size()) + " bytes, of which impact weights "
+				+ impactWeightBytes + " bytes");
+	}
+
+	// namespaces of classes, each with some fields and methods; the new version has some bodies changed and some
+	// methods renamed
+	private static ProjectVersion createVersion(String name, int classCount, boolean changed) {
+		final Random random = new Random(SEED);
+		final RootNode root = new RootNode();
+		final List<FunctionNode> functions = new ArrayList<>();
+		final List<VariableNode> variables = new ArrayList<>();
+		NamespaceNode namespace = null;
+		for (int index = 0; index < classCount; index++) {
+			if (index % 10 == 0) {
+				namespace = new NamespaceNode();
+				namespace.setName("ns" + index / 10);
+				namespace.setUniqueName("ns" + index / 10);
+				namespace.setSignature("ns" + index / 10);
+				root.addChild(namespace);
+			}
+			final String className = "C" + index;
+			final String classUniqueName = namespace.getUniqueName() + "::" + className;
+			final ClassNode classNode = new ClassNode();
+			classNode.setName(className);
+			classNode.setUniqueName(classUniqueName);
+			classNode.setSignature("class " + className);
+			namespace.addChild(classNode);
+
+			for (int field = 0; field < 4; field++) {
+				final VariableNode variable = new VariableNode();
+				variable.setName("v" + field);
+				variable.setUniqueName(classUniqueName + "::v" + field);
+				variable.setSignature("int v" + field);
+				classNode.addChild(variable);
+				variables.add(variable);
+			}
+			for (int method = 0; method < 8; method++) {
+				// both versions draw the same numbers, so they only differ in the changes
+				final boolean renamed = random.nextInt(50) == 0 && changed;
+				final boolean bodyChanged = random.nextInt(10) == 0 && changed;
+				final String methodName = renamed ? "f" + method + "_renamed" : "f" + method;
+				final FunctionNode function = new FunctionNode();
+				function.setName(methodName);
+				function.setUniqueName(classUniqueName + "::" + methodName);
+				function.setSignature("void " + methodName + "(int)");
+				function.setBody("void " + methodName + "(int x) { return " + (bodyChanged ? "x + 1" : "x") + "; }");
+				classNode.addChild(function);
+				functions.add(function);
+			}
+		}
+		for (final FunctionNode function : functions) {
+			for (int link = 0; link < 3; link++) {
+				final FunctionNode target = functions.get(random.nextInt(functions.size()));
+				if (target != function) function.addDependencyTo(target, DependencyType.INVOCATION);
+				function.addDependencyTo(variables.get(random.nextInt(variables.size())), DependencyType.USE);
+			}
+		}
+		root.lock();
+
+		final double[] typeWeights = new double[DependencyType.values().length];
+		for (final DependencyType type : DependencyType.values()) {
+			typeWeights[type.ordinal()] = VersionDiffer.IMPACT_WEIGHT_MAP.get(type);
+		}
+		return new ProjectVersion(name, List.of(), List.of(), root, typeWeights, new double[root.getNodeCount()]);
+	}
+}
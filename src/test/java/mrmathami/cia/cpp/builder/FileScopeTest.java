@@ -0,0 +1,118 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.cia.cpp.CppException;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.NamespaceNode;
+import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.cia.cpp.differ.VersionDiffer;
+import mrmathami.cia.cpp.differ.VersionDifference;
+import mrmathami.utils.Pair;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Check that skipping the unchanged files settles the nodes of the unchanged files and compares the nodes of the
+ * changed files. Both versions have a function in {@code unchanged.cpp} and one in {@code changed.cpp}, and both
+ * functions have a different body in the second version. Only the content of {@code changed.cpp} is different, so the
+ * function of {@code unchanged.cpp} has to be paired as unchanged without being compared, while the full comparison
+ * and the function of {@code changed.cpp} still see the change. The driver is in the builder package because the
+ * origins are added with the builder of the origin table.
+ */
+public final class FileScopeTest {
+	private static final Path PROJECT_ROOT = Path.of("/project");
+
+	private FileScopeTest() {
+	}
+
+	public static void main(String[] args) throws CppException {
+		final Version versionA = createVersion("a", "int x = 1;", "int y = 1;");
+		final Version versionB = createVersion("b", "int x = 1;", "int y = 2;");
+		final Set<String> changedFiles = Objects.requireNonNull(versionA.version.getFileOrigins())
+				.getChangedFiles(Objects.requireNonNull(versionB.version.getFileOrigins()));
+
+		final VersionDifference full = VersionDiffer.compare(versionA.version, versionB.version,
+				VersionDiffer.IMPACT_WEIGHT_MAP, 4, false);
+		final VersionDifference scoped = VersionDiffer.compare(versionA.version, versionB.version,
+				VersionDiffer.IMPACT_WEIGHT_MAP, 4, true);
+
+		final Pair<CppNode, CppNode> unchangedFile = Pair.immutableOf(versionA.unchangedFile, versionB.unchangedFile);
+		final Pair<CppNode, CppNode> changedFile = Pair.immutableOf(versionA.changedFile, versionB.changedFile);
+		final boolean correct = changedFiles.equals(Set.of("changed.cpp"))
+				&& full.getChangedNodes().contains(unchangedFile)
+				&& full.getChangedNodes().contains(changedFile)
+				&& scoped.getUnchangedNodes().contains(unchangedFile)
+				&& scoped.getChangedNodes().contains(changedFile)
+				&& scoped.getAddedNodes().isEmpty()
+				&& scoped.getRemovedNodes().isEmpty();
+		System.out.println("changed files " + changedFiles);
+		System.out.println("full: unchanged.cpp " + state(full, unchangedFile)
+				+ ", changed.cpp " + state(full, changedFile));
+		System.out.println("skipping unchanged files: unchanged.cpp " + state(scoped, unchangedFile)
+				+ ", changed.cpp " + state(scoped, changedFile));
+		System.out.println("failures " + (correct ? 0 : 1));
+	}
+
+	private static String state(VersionDifference difference, Pair<CppNode, CppNode> pair) {
+		if (difference.getChangedNodes().contains(pair)) return "changed";
+		if (difference.getUnchangedNodes().contains(pair)) return "unchanged";
+		return "not paired";
+	}
+
+	// the preprocessor output of both files is the code of the file, and the function bodies are not in it, so that
+	// the bodies can change without changing the content of their files
+	private static Version createVersion(String name, String unchangedCode, String changedCode) {
+		final RootNode root = new RootNode();
+		final FunctionNode unchangedFile = addFunction(root, "unchanged_ns", "f", "{ return " + name + "; }");
+		final FunctionNode changedFile = addFunction(root, "changed_ns", "g", "{ return " + name + "; }");
+		root.lock();
+
+		final FileOriginTable.Builder builder = new FileOriginTable.Builder(PROJECT_ROOT);
+		builder.markFile(PROJECT_ROOT.resolve("unchanged.cpp"), 0);
+		builder.markFile(PROJECT_ROOT.resolve("changed.cpp"), unchangedCode.length());
+		builder.hashContent((unchangedCode + changedCode).toCharArray());
+		for (final CppNode node : List.of(unchangedFile, unchangedFile.getParent())) builder.addOrigin(node, 0);
+		for (final CppNode node : List.of(changedFile, changedFile.getParent())) {
+			builder.addOrigin(node, unchangedCode.length());
+		}
+
+		final double[] typeWeights = new double[DependencyType.values().length];
+		for (final DependencyType type : DependencyType.values()) {
+			typeWeights[type.ordinal()] = VersionDiffer.IMPACT_WEIGHT_MAP.get(type);
+		}
+		final ProjectVersion version = new ProjectVersion(name, List.of("unchanged.cpp", "changed.cpp"), List.of(),
+				root, typeWeights, new double[root.getNodeCount()], builder.build(root));
+		return new Version(version, unchangedFile, changedFile);
+	}
+
+	private static FunctionNode addFunction(RootNode root, String namespaceName, String name, String body) {
+		final NamespaceNode namespace = new NamespaceNode();
+		namespace.setName(namespaceName);
+		namespace.setUniqueName(namespaceName);
+		namespace.setSignature(namespaceName);
+		root.addChild(namespace);
+		final FunctionNode function = new FunctionNode();
+		function.setName(name);
+		function.setUniqueName(namespaceName + "::" + name);
+		function.setSignature("int " + name + "()");
+		function.setBody("int " + name + "() " + body);
+		namespace.addChild(function);
+		return function;
+	}
+
+	private static final class Version {
+		private final ProjectVersion version;
+		private final FunctionNode unchangedFile;
+		private final FunctionNode changedFile;
+
+		Version(ProjectVersion version, FunctionNode unchangedFile, FunctionNode changedFile) {
+			this.version = version;
+			this.unchangedFile = unchangedFile;
+			this.changedFile = changedFile;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package mrmathami.cia.cpp.builder;
+
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.NodeTable;
+import mrmathami.cia.cpp.ast.RootNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Check the reachability index against a breadth first search over the dependencies of the nodes, for every pair of
+ * nodes and a few sets of dependency types, on the test4 versions and on random graphs with cycles. The driver is in
+ * the builder package because the index of a random tree is created without a version.
+ */
+public final class ReachabilityTest {
+	private static final long SEED = 7;
+	private static final List<Set<DependencyType>> TYPE_SETS = List.of(
+			EnumSet.allOf(DependencyType.class),
+			EnumSet.of(DependencyType.INVOCATION),
+			EnumSet.of(DependencyType.USE, DependencyType.INVOCATION),
+			EnumSet.of(DependencyType.INHERITANCE, DependencyType.OVERRIDE),
+			EnumSet.noneOf(DependencyType.class));
+	private static final DependencyType[] LINK_TYPES
+			= {DependencyType.USE, DependencyType.INVOCATION, DependencyType.INVOCATION, DependencyType.INHERITANCE};
+
+	private ReachabilityTest() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		int mismatches = 0;
+		for (final String file : List.of("test4_old.proj", "test4_new.proj")) {
+			try (final InputStream inputStream = Files.newInputStream(Path.of(file))) {
+				final ProjectVersion version = ProjectVersion.fromInputStream(inputStream);
+				for (final Set<DependencyType> types : TYPE_SETS) {
+					mismatches += check(file, version.getRootNode(), version.getReachabilityIndex(types), types);
+				}
+			}
+		}
+
+		final Random random = new Random(SEED);
+		for (int graph = 0; graph < 20; graph++) {
+			final RootNode root = createGraph(random, 50 + random.nextInt(500), 1 + random.nextInt(3));
+			for (final Set<DependencyType> types : TYPE_SETS) {
+				mismatches += check("random " + graph, root, new ReachabilityIndex(root.getDependencyGraph(), types),
+						types);
+			}
+		}
+		System.out.println("mismatches " + mismatches);
+	}
+
+	private static int check(String name, RootNode root, ReachabilityIndex index, Set<DependencyType> types) {
+		final NodeTable table = root.getNodeTable();
+		final int nodeCount = table.getNodeCount();
+		final BitSet[] reachable = new BitSet[nodeCount];
+		for (int id = 0; id < nodeCount; id++) reachable[id] = search(table.getNode(id), types);
+
+		int pairs = 0;
+		int positives = 0;
+		int cyclic = 0;
+		int mismatches = 0;
+		for (int id = 0; id < nodeCount; id++) {
+			final CppNode node = table.getNode(id);
+			if (reachable[id].get(id)) cyclic += 1;
+			for (int otherId = 0; otherId < nodeCount; otherId++) {
+				final boolean expected = reachable[id].get(otherId);
+				pairs += 1;
+				if (expected) positives += 1;
+				if (index.dependsOn(node, table.getNode(otherId)) != expected) mismatches += 1;
+			}
+			if (!toBitSet(index.getAllDependencies(node)).equals(reachable[id])) mismatches += 1;
+
+			final BitSet dependents = new BitSet(nodeCount);
+			for (int otherId = 0; otherId < nodeCount; otherId++) {
+				if (reachable[otherId].get(id)) dependents.set(otherId);
+			}
+			if (!toBitSet(index.getAllDependents(node)).equals(dependents)) mismatches += 1;
+		}
+		System.out.println(name + " " + types + ": nodes " + nodeCount + ", pairs " + pairs + ", reachable "
+				+ positives + ", on a cycle " + cyclic + ", mismatches " + mismatches);
+		return mismatches;
+	}
+
+	// the ids of the nodes reachable from a node, which includes the node itself only if it is on a cycle
+	private static BitSet search(CppNode start, Set<DependencyType> types) {
+		final BitSet visited = new BitSet();
+		final Deque<CppNode> queue = new ArrayDeque<>();
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			final CppNode node = queue.poll();
+			for (final CppNode dependency : node.getAllDependencyTo()) {
+				if (visited.get(dependency.getId())) continue;
+				for (final DependencyType type : types) {
+					if (node.getDependencyTo(dependency, type) > 0) {
+						visited.set(dependency.getId());
+						queue.add(dependency);
+						break;
+					}
+				}
+			}
+		}
+		return visited;
+	}
+
+	private static BitSet toBitSet(List<CppNode> nodes) {
+		final BitSet ids = new BitSet();
+		for (final CppNode node : nodes) ids.set(node.getId());
+		return ids;
+	}
+
+	// function nodes with random use, invocation and inheritance links, and a ring of invocations over a part of them
+	// so that there is at least one large cycle
+	private static RootNode createGraph(Random random, int nodeCount, int linkCount) {
+		final RootNode root = new RootNode();
+		final List<FunctionNode> functions = new ArrayList<>(nodeCount);
+		for (int index = 0; index < nodeCount; index++) {
+			final FunctionNode function = new FunctionNode();
+			function.setName("f" + index);
+			function.setUniqueName("f" + index);
+			function.setSignature("void f" + index + "()");
+			root.addChild(function);
+			functions.add(function);
+		}
+		for (final FunctionNode function : functions) {
+			for (int link = random.nextInt(linkCount + 1); link > 0; link--) {
+				final FunctionNode target = functions.get(random.nextInt(nodeCount));
+				if (target != function) function.addDependencyTo(target, LINK_TYPES[random.nextInt(LINK_TYPES.length)]);
+			}
+		}
+		final int ringSize = 2 + random.nextInt(nodeCount / 4);
+		for (int index = 0; index < ringSize; index++) {
+			functions.get(index).addDependencyTo(functions.get((index + 1) % ringSize), DependencyType.INVOCATION);
+		}
+		root.lock();
+		return root;
+	}
+}
@@ -0,0 +1,135 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.cia.cpp.CppException;
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.DependencyType;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.RootNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare the impact engines on synthetic graphs of function nodes with random {@code USE} and {@code INVOCATION}
+ * links, the numbers of the impact engines table of the README. Every case is run until it took a second, 50 times at
+ * most, after a warm up of both engines, and the median time is printed. The table was measured with
+ * {@code -Djava.util.concurrent.ForkJoinPool.common.parallelism=1}, so that both engines run on one thread.
+ */
+public final class ImpactEngineTest {
+	private static final long SEED = 7;
+	private static final int CHANGED_COUNT = 10;
+	// the weights of the nodes reached by many paths are so close to 1 that the engines cannot differ on them, so only
+	// the errors of the nodes that are reached but not saturated are reported
+	private static final double SATURATED_WEIGHT = 0.999;
+	// nodes, links per node, depth
+	private static final int[][] CASES = {
+			{5000, 2, 4},
+			{5000, 2, 8},
+			{5000, 4, 4},
+			{5000, 8, 2},
+			{5000, 8, 6},
+			{5000, 8, 8},
+	};
+	private static final int MAX_RUNS = 50;
+	private static final long MIN_TOTAL_NANOS = 1000000000L;
+
+	private ImpactEngineTest() {
+	}
+
+	public static void main(String[] args) throws CppException {
+		final double[] typeWeights = new double[DependencyType.values().length];
+		for (final DependencyType type : DependencyType.values()) {
+			typeWeights[type.ordinal()] = VersionDiffer.IMPACT_WEIGHT_MAP.get(type);
+		}
+
+		// warm up both engines on a small graph
+		final RootNode warmUpRoot = createGraph(1000, 4);
+		final List<CppNode> warmUpChanged = changedNodes(warmUpRoot);
+		for (int run = 0; run < 200; run++) {
+			ImpactWeightBuilder.calculate(typeWeights, warmUpRoot, warmUpChanged, 4);
+			ImpactWeightBuilder.propagate(typeWeights, warmUpRoot, warmUpChanged, 4);
+		}
+
+		System.out.println("nodes\tlinks\tdepth\tcompared\tmean error\tmax error\tpaths ms\tpropagation ms");
+		for (final int[] testCase : CASES) {
+			final RootNode root = createGraph(testCase[0], testCase[1]);
+			final List<CppNode> changed = changedNodes(root);
+			final int depth = testCase[2];
+
+			final double[] paths = ImpactWeightBuilder.calculate(typeWeights, root, changed, depth);
+			final double[] propagation = ImpactWeightBuilder.propagate(typeWeights, root, changed, depth);
+			int compared = 0;
+			double sum = 0;
+			double max = 0;
+			for (int id = 0; id < paths.length; id++) {
+				if (paths[id] <= 0.0 || paths[id] >= SATURATED_WEIGHT) continue;
+				final double error = Math.abs(paths[id] - propagation[id]);
+				compared += 1;
+				sum += error;
+				max = Math.max(max, error);
+			}
+
+			final double pathsTime = medianTime(() -> ImpactWeightBuilder.calculate(typeWeights, root, changed, depth));
+			final double propagationTime
+					= medianTime(() -> ImpactWeightBuilder.propagate(typeWeights, root, changed, depth));
+			System.out.printf("%d\t%d\t%d\t%d\t%.6f\t%.6f\t%.1f\t%.1f%n", testCase[0], testCase[1], depth, compared,
+					compared > 0 ? sum / compared : 0.0, max, pathsTime, propagationTime);
+		}
+	}
+
+	private static RootNode createGraph(int nodeCount, int linkCount) {
+		final Random random = new Random(SEED);
+		final RootNode root = new RootNode();
+		final List<FunctionNode> functions = new ArrayList<>(nodeCount);
+		for (int index = 0; index < nodeCount; index++) {
+			final FunctionNode function = new FunctionNode();
+			function.setName("f" + index);
+			function.setUniqueName("f" + index);
+			function.setSignature("void f" + index + "()");
+			root.addChild(function);
+			functions.add(function);
+		}
+		for (final FunctionNode function : functions) {
+			for (int link = 0; link < linkCount; link++) {
+				final FunctionNode target = functions.get(random.nextInt(nodeCount));
+				if (target != function) {
+					function.addDependencyTo(target,
+							random.nextInt(3) == 0 ? DependencyType.USE : DependencyType.INVOCATION);
+				}
+			}
+		}
+		root.lock();
+		return root;
+	}
+
+	private static List<CppNode> changedNodes(RootNode root) {
+		final int nodeCount = root.getNodeCount();
+		final List<CppNode> changed = new ArrayList<>(CHANGED_COUNT);
+		for (int index = 0; index < CHANGED_COUNT; index++) {
+			changed.add(root.getNodeTable().getNode(1 + index * ((nodeCount - 1) / CHANGED_COUNT)));
+		}
+		return changed;
+	}
+
+	private static double medianTime(Calculation calculation) throws CppException {
+		System.gc();
+		final List<Double> times = new ArrayList<>();
+		long total = 0;
+		while (times.size() < MAX_RUNS && total < MIN_TOTAL_NANOS) {
+			final long start_time = System.nanoTime();
+			calculation.run();
+			final long time = System.nanoTime() - start_time;
+			total += time;
+			times.add(time / 1000000.0);
+		}
+		final double[] sorted = times.stream().mapToDouble(Double::doubleValue).toArray();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private interface Calculation {
+		void run() throws CppException;
+	}
+}
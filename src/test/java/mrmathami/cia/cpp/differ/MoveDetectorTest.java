@@ -0,0 +1,80 @@
+package mrmathami.cia.cpp.differ;
+
+import mrmathami.cia.cpp.ast.CppNode;
+import mrmathami.cia.cpp.ast.FunctionNode;
+import mrmathami.cia.cpp.ast.NamespaceNode;
+import mrmathami.cia.cpp.ast.RootNode;
+import mrmathami.utils.Pair;
+
+import java.util.List;
+
+/**
+ * Check the move detector on a function whose body is moved to another file, once unchanged and once with a small
+ * edit: its removed and added nodes have to come out as the only moved pair, with a similarity of at least 0.75, and
+ * the removed and added functions with unrelated bodies must not be paired.
+ */
+public final class MoveDetectorTest {
+	private static final double SIMILARITY = 0.75;
+	private static final String MOVED_BODY = "int checksum(const char *data, int size) { int sum = 0; "
+			+ "for (int i = 0; i < size; i++) { sum = sum * 31 + data[i]; } return sum ^ (sum >> 16); }";
+	private static final String EDITED_BODY = "int checksum(const char *data, int size) { int sum = 0; "
+			+ "for (int i = 0; i < size; i++) { sum = sum * 37 + data[i]; } return sum ^ (sum >> 16); }";
+	private static final String REMOVED_BODY = "void log_line(FILE *out, const char *message) { "
+			+ "fputs(message, out); fputc('\\n', out); fflush(out); }";
+	private static final String ADDED_BODY = "double average(const double *values, int count) { double total = 0.0; "
+			+ "for (int k = 0; k < count; k++) total += values[k]; return count > 0 ? total / count : 0.0; }";
+
+	private MoveDetectorTest() {
+	}
+
+	public static void main(String[] args) {
+		int failures = 0;
+		for (final String movedBody : List.of(MOVED_BODY, EDITED_BODY)) {
+			// version A has the function in file_a, version B has it in file_b
+			final RootNode rootA = new RootNode();
+			final FunctionNode movedA = addFunction(addNamespace(rootA, "file_a"), "checksum", MOVED_BODY);
+			final FunctionNode removed = addFunction(addNamespace(rootA, "file_c"), "log_line", REMOVED_BODY);
+			rootA.lock();
+			final RootNode rootB = new RootNode();
+			final FunctionNode movedB = addFunction(addNamespace(rootB, "file_b"), "checksum", movedBody);
+			final FunctionNode added = addFunction(addNamespace(rootB, "file_d"), "average", ADDED_BODY);
+			rootB.lock();
+
+			final VersionDiffer.Matching matching = new VersionDiffer.Matching();
+			matching.removedNodes.addAll(List.of(movedA, removed));
+			matching.addedNodes.addAll(List.of(added, movedB));
+			MoveDetector.detect(matching);
+
+			final double movedSimilarity = MoveDetector.similarity(movedA, movedB);
+			final double unrelatedSimilarity = MoveDetector.similarity(removed, added);
+			final boolean correct = matching.movedNodes.equals(List.of(Pair.immutableOf(movedA, movedB)))
+					&& movedSimilarity >= SIMILARITY
+					&& matching.removedNodes.equals(List.of(removed))
+					&& matching.addedNodes.equals(List.of(added));
+			if (!correct) failures += 1;
+			System.out.printf("%s: moved %d, similarity %.3f, unrelated similarity %.3f, removed %d, added %d%n",
+					correct ? "correct" : "WRONG", matching.movedNodes.size(), movedSimilarity, unrelatedSimilarity,
+					matching.removedNodes.size(), matching.addedNodes.size());
+		}
+		System.out.println("failures " + failures);
+	}
+
+	private static NamespaceNode addNamespace(CppNode parent, String name) {
+		final NamespaceNode namespace = new NamespaceNode();
+		namespace.setName(name);
+		namespace.setUniqueName(name);
+		namespace.setSignature(name);
+		parent.addChild(namespace);
+		return namespace;
+	}
+
+	private static FunctionNode addFunction(NamespaceNode namespace, String name, String body) {
+		final FunctionNode function = new FunctionNode();
+		function.setName(name);
+		function.setUniqueName(namespace.getUniqueName() + "::" + name);
+		function.setSignature(body.substring(0, body.indexOf(')') + 1));
+		function.setBody(body);
+		namespace.addChild(function);
+		return function;
+	}
+}